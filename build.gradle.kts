@@ -21,6 +21,7 @@ plugins {
 
 val project_version: String by project
 val asm_version: String by project
+val junit_version: String by project
 
 val isPublish = System.getenv("GITHUB_EVENT_NAME") == "release"
 val isRelease = System.getenv("BUILD_RELEASE").toBoolean()
@@ -50,7 +51,10 @@ repositories {
   maven { url = uri("https://oss.sonatype.org/content/repositories/snapshots") }
 }
 
-dependencies { implementation("org.ow2.asm", "asm", asm_version) }
+dependencies {
+  implementation("org.ow2.asm", "asm", asm_version)
+  testImplementation("org.junit.jupiter", "junit-jupiter", junit_version)
+}
 
 spotless {
   java {
@@ -76,4 +80,5 @@ tasks {
     options.isWarnings = true
   }
   withType<Jar> { from("LICENSE") }
+  withType<Test> { useJUnitPlatform() }
 }
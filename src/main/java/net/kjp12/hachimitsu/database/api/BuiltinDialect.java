@@ -0,0 +1,231 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T15:44:52
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Dialects of the databases supported out of the box.
+ *
+ * @author KJP12
+ * @since ${version}
+ **/
+public enum BuiltinDialect implements Dialect {
+	/** The SQL the cache has always generated. */
+	STANDARD,
+	/**
+	 * Matches arrays with <code>= any(?)</code>. Index hints are written as
+	 * <code>pg_hint_plan</code> comments, being ignored without the extension.
+	 * Results are fetched in batches when the connection isn't in auto-commit.
+	 */
+	POSTGRESQL("PostgreSQL") {
+		@Override
+		public boolean arrays() {
+			return true;
+		}
+
+		@Override
+		public void index(StringBuilder statement, StringBuilder table, String name, String index) {
+			var hint = "IndexScan(" + name + ' ' + index + ')';
+			// Only the first comment is read, so all hints must share it.
+			if (statement.indexOf("/*+ ") == 0) {
+				statement.insert(statement.indexOf(" */"), ' ' + hint);
+			} else {
+				statement.insert(0, "/*+ " + hint + " */ ");
+			}
+		}
+
+		@Override
+		public PreparedStatement prepare(Connection connection, String sql, boolean exclusive) throws SQLException {
+			var statement = super.prepare(connection, sql, exclusive);
+			if (exclusive) {
+				statement.setFetchSize(FETCH_SIZE);
+			}
+			return statement;
+		}
+	},
+	/**
+	 * MySQL and MariaDB. Nested fields are read from JSON columns, and results are
+	 * streamed row by row when the connection is exclusive to the statement.
+	 */
+	MYSQL("MySQL", "MariaDB") {
+		@Override
+		public void field(StringBuilder sql, int start, String[] fields) {
+			sql.append("->>'$.").append(String.join(".", fields)).append('\'');
+		}
+
+		@Override
+		public void paginate(StringBuilder sql, boolean limit, boolean offset) {
+			if (limit) {
+				sql.append(" limit ?");
+			} else if (offset) {
+				// An offset is not allowed without a limit.
+				sql.append(" limit 18446744073709551615");
+			}
+			if (offset) {
+				sql.append(" offset ?");
+			}
+		}
+
+		@Override
+		public void index(StringBuilder statement, StringBuilder table, String name, String index) {
+			table.append(" use index(").append(index).append(')');
+		}
+
+		@Override
+		public void scans(List<String> plan, long threshold, List<String> warnings) {
+			for (var line : plan) {
+				var rows = MYSQL_ROWS.matcher(line);
+				long estimate = rows.find() ? Long.parseLong(rows.group(1)) : -1L;
+				if (estimate >= 0L && estimate < threshold) {
+					continue;
+				}
+				var table = MYSQL_TABLE.matcher(line);
+				var name = table.find() ? table.group(1) : "?";
+				if (line.contains("type=ALL")) {
+					warnings.add("Full scan on " + name + " of " + estimate + " rows");
+				}
+				if (line.contains("Using filesort")) {
+					warnings.add("Filesort on " + name + " of " + estimate + " rows");
+				}
+			}
+		}
+
+		@Override
+		public PreparedStatement prepare(Connection connection, String sql, boolean exclusive) throws SQLException {
+			var statement = super.prepare(connection, sql, exclusive);
+			if (exclusive) {
+				// Connector/J only streams on this exact fetch size.
+				statement.setFetchSize(Integer.MIN_VALUE);
+			}
+			return statement;
+		}
+	},
+	/** Nested fields are read from JSON columns. */
+	SQLITE("SQLite") {
+		@Override
+		public void field(StringBuilder sql, int start, String[] fields) {
+			sql.insert(start, "json_extract(").append(",'$.").append(String.join(".", fields)).append("')");
+		}
+
+		@Override
+		public void paginate(StringBuilder sql, boolean limit, boolean offset) {
+			if (limit) {
+				sql.append(" limit ?");
+			} else if (offset) {
+				// An offset is not allowed without a limit.
+				sql.append(" limit -1");
+			}
+			if (offset) {
+				sql.append(" offset ?");
+			}
+		}
+
+		@Override
+		public void index(StringBuilder statement, StringBuilder table, String name, String index) {
+			table.append(" indexed by ").append(index);
+		}
+
+		@Override
+		public String explain(String sql) {
+			return "explain query plan " + sql;
+		}
+
+		/** No estimates are given, as such, every scan is reported. */
+		@Override
+		public void scans(List<String> plan, long threshold, List<String> warnings) {
+			for (var line : plan) {
+				var scan = SQLITE_SCAN.matcher(line);
+				if (scan.find()) {
+					warnings.add("Full scan on " + scan.group(1));
+				}
+				if (line.contains("TEMP B-TREE")) {
+					warnings.add("Sort using a temporary b-tree: " + line);
+				}
+			}
+		}
+	},
+	/** Matches arrays with <code>= any(?)</code>. */
+	H2("H2") {
+		@Override
+		public boolean arrays() {
+			return true;
+		}
+
+		@Override
+		public void index(StringBuilder statement, StringBuilder table, String name, String index) {
+			table.append(" use index (").append(index).append(')');
+		}
+
+		/** No estimates are given, as such, every scan is reported. */
+		@Override
+		public void scans(List<String> plan, long threshold, List<String> warnings) {
+			for (var line : plan) {
+				var scan = H2_SCAN.matcher(line);
+				while (scan.find()) {
+					warnings.add("Full scan on " + scan.group(1));
+				}
+			}
+		}
+	};
+
+	private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\S+).*?rows=(\\d+)"),
+			SORT = Pattern.compile("(?:^|->)\\s*Sort\\s+\\(.*?rows=(\\d+)"),
+			MYSQL_ROWS = Pattern.compile("\\brows=(\\d+)"),
+			MYSQL_TABLE = Pattern.compile("\\btable=([^,]+)"),
+			SQLITE_SCAN = Pattern.compile("\\bSCAN (?:TABLE )?(\\w+)"),
+			H2_SCAN = Pattern.compile("/\\* ([\\w.]+)\\.tableScan \\*/");
+
+	private static final int FETCH_SIZE = 256;
+
+	private final String[] products;
+
+	BuiltinDialect(String... products) {
+		this.products = products;
+	}
+
+	static void postgresScans(List<String> plan, long threshold, List<String> warnings) {
+		for (var line : plan) {
+			var scan = SEQ_SCAN.matcher(line);
+			if (scan.find()) {
+				long rows = Long.parseLong(scan.group(2));
+				if (rows >= threshold) {
+					warnings.add("Sequential scan on " + scan.group(1) + " of " + rows + " rows");
+				}
+				continue;
+			}
+			var sort = SORT.matcher(line);
+			if (sort.find()) {
+				long rows = Long.parseLong(sort.group(1));
+				if (rows >= threshold) {
+					warnings.add("Sort of " + rows + " rows");
+				}
+			}
+		}
+	}
+
+	boolean matches(String product) {
+		for (var name : products) {
+			if (product.regionMatches(true, 0, name, 0, name.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,262 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T18:58:20
+
+import java.time.Duration;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit of concurrent queries for a {@link SqlConnectionProvider},
+ * shared between every cache using the provider.
+ * <p>
+ * The limit follows additive-increase/multiplicative-decrease. While queries
+ * complete within twice the lowest recent latency, and the limit is being used,
+ * it grows by one per limit worth of queries. Once a query is slower, or fails
+ * transiently, the limit is cut by a tenth, at most once per the latency of the
+ * query, as every query in flight will likely have seen the same slowdown.
+ * <p>
+ * Queries over the limit wait in order of priority then arrival, being rejected
+ * with a {@link LimitExceededException} once the queue is full or the wait is
+ * exceeded.
+ *
+ * @author KJP12
+ * @since ${version}
+ * @see SqlConnectionProvider#limiter()
+ * @see StatementCache#setPriority(int)
+ **/
+public final class ConcurrencyLimiter {
+	private static final double BACKOFF = 0.9D, TOLERANCE = 2D;
+	/** Samples after which the baseline latency is re-measured. */
+	private static final int WINDOW = 1024;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+	private final int min, max, queue;
+	private final long wait;
+	private double limit;
+	private int inflight, samples;
+	private long sequence, baseline = Long.MAX_VALUE, windowMin = Long.MAX_VALUE;
+	/**
+	 * When the limit was last cut. Starts half the range of the clock back, as its
+	 * origin is arbitrary and may be negative, allowing the first cut.
+	 */
+	private long decreased = System.nanoTime() - Long.MAX_VALUE / 2;
+
+	/**
+	 * @param initial The limit to start at.
+	 * @param min     The lowest the limit may be cut to.
+	 * @param max     The highest the limit may grow to.
+	 * @param queue   The amount of queries that may wait for the limit, 0 to
+	 *                reject immediately.
+	 * @param wait    How long a query may wait before being rejected.
+	 */
+	public ConcurrencyLimiter(int initial, int min, int max, int queue, Duration wait) {
+		if (min < 1 || min > initial || initial > max) {
+			throw new IllegalArgumentException("limits must be 1 <= min <= initial <= max: " + min + ", " + initial
+					+ ", " + max);
+		}
+		if (queue < 0) {
+			throw new IllegalArgumentException("queue must not be negative: " + queue);
+		}
+		this.limit = initial;
+		this.min = min;
+		this.max = max;
+		this.queue = queue;
+		this.wait = wait.toNanos();
+	}
+
+	/**
+	 * Admits a query, waiting for the limit if necessary. Must be followed by
+	 * {@link #release(long, boolean)}.
+	 *
+	 * @param priority Higher priorities are admitted first.
+	 * @throws LimitExceededException if the queue is full or the wait exceeded.
+	 */
+	public void acquire(int priority) throws LimitExceededException {
+		Waiter waiter;
+		lock.lock();
+		try {
+			if (inflight < (int) limit && waiters.isEmpty()) {
+				inflight++;
+				return;
+			}
+			if (waiters.size() >= queue) {
+				throw new LimitExceededException("Queue is full", (int) limit, waiters.size());
+			}
+			waiters.add(waiter = new Waiter(priority, sequence++, Thread.currentThread()));
+		} finally {
+			lock.unlock();
+		}
+		long deadline = System.nanoTime() + wait;
+		while (!waiter.granted) {
+			long remaining = deadline - System.nanoTime();
+			boolean interrupted = Thread.interrupted();
+			if (remaining <= 0L || interrupted) {
+				lock.lock();
+				try {
+					if (waiter.granted) {
+						break;
+					}
+					waiters.remove(waiter);
+					if (interrupted) {
+						Thread.currentThread().interrupt();
+					}
+					throw new LimitExceededException(interrupted ? "Interrupted while waiting" : "Timed out waiting",
+							(int) limit, waiters.size());
+				} finally {
+					lock.unlock();
+				}
+			}
+			LockSupport.parkNanos(this, remaining);
+		}
+	}
+
+	/**
+	 * Releases an admitted query, adjusting the limit by its outcome and admitting
+	 * waiting queries.
+	 *
+	 * @param nanos   How long the query spent executing on the database, or 0 if
+	 *                it never executed, such as when it shared the result of an
+	 *                identical query, in which case the limit is left as is.
+	 * @param dropped Whether the query failed in a way that suggests overload,
+	 *                such as a timeout.
+	 */
+	public void release(long nanos, boolean dropped) {
+		lock.lock();
+		try {
+			if (nanos > 0L || dropped) {
+				adjust(nanos, dropped);
+			}
+			inflight--;
+			while (inflight < (int) limit && !waiters.isEmpty()) {
+				var waiter = waiters.poll();
+				inflight++;
+				waiter.granted = true;
+				LockSupport.unpark(waiter.thread);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Samples the latency of the query, adjusting the limit by its outcome. */
+	private void adjust(long nanos, boolean dropped) {
+		long now = System.nanoTime();
+		if (nanos < windowMin) {
+			windowMin = nanos;
+		}
+		if (nanos < baseline) {
+			baseline = nanos;
+		}
+		if (++samples >= WINDOW) {
+			// Re-measured, allowing a lasting change in latency to become the baseline.
+			baseline = windowMin;
+			windowMin = Long.MAX_VALUE;
+			samples = 0;
+		}
+		if (dropped || nanos > baseline * TOLERANCE) {
+			if (now - decreased > nanos) {
+				decreased = now;
+				limit = Math.max(min, limit * BACKOFF);
+			}
+		} else if (inflight * 2 >= limit) {
+			limit = Math.min(max, limit + 1D / limit);
+		}
+	}
+
+	/** @return The current limit. */
+	public int limit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** @return The amount of admitted queries that have yet to be released. */
+	public int inflight() {
+		lock.lock();
+		try {
+			return inflight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** @return The amount of queries waiting to be admitted. */
+	public int queued() {
+		lock.lock();
+		try {
+			return waiters.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrencyLimiter{limit=" + limit() + ", inflight=" + inflight() + ", queued=" + queued() + '}';
+	}
+
+	private static final class Waiter implements Comparable<Waiter> {
+		final int priority;
+		final long sequence;
+		final Thread thread;
+		volatile boolean granted;
+
+		Waiter(int priority, long sequence, Thread thread) {
+			this.priority = priority;
+			this.sequence = sequence;
+			this.thread = thread;
+		}
+
+		@Override
+		public int compareTo(Waiter o) {
+			int c = Integer.compare(o.priority, priority);
+			return c != 0 ? c : Long.compare(sequence, o.sequence);
+		}
+	}
+
+	/**
+	 * Thrown when a query is rejected by the limiter.
+	 *
+	 * @author KJP12
+	 * @since ${version}
+	 **/
+	public static final class LimitExceededException extends DatabaseException {
+		private static final long serialVersionUID = 1L;
+
+		private final int limit, queued;
+
+		LimitExceededException(String reason, int limit, int queued) {
+			super(reason + ": limit " + limit + ", queued " + queued);
+			this.limit = limit;
+			this.queued = queued;
+		}
+
+		/** @return The limit at the time of rejection. */
+		public int limit() {
+			return limit;
+		}
+
+		/** @return The amount of queries waiting at the time of rejection. */
+		public int queued() {
+			return queued;
+		}
+	}
+}
@@ -0,0 +1,288 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T12:31:05
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lightweight connection pool that is aware of the statement cache.
+ * <p>
+ * Every physical connection keeps its own cache of prepared statements keyed by
+ * the raw SQL, allowing a handler to run on whichever connection it borrows
+ * without preparing the statement again.
+ * <p>
+ * The pool may be extended by providers that expose additional methods for use
+ * within {@link net.kjp12.hachimitsu.database.api.annotation.Query#values()
+ * query values}.
+ *
+ * @author KJP12
+ * @since ${version}
+ **/
+public class ConnectionPool implements SqlConnectionProvider, AutoCloseable {
+	private final ConcurrentLinkedDeque<Lease> idle = new ConcurrentLinkedDeque<>();
+	private final Semaphore permits;
+	private final Factory factory;
+	private final int statements;
+	private final long timeout;
+	private volatile Connection shared;
+	private volatile Dialect dialect;
+	private volatile ConcurrencyLimiter limiter;
+	private volatile boolean closed;
+
+	/**
+	 * @param factory    Opens new physical connections.
+	 * @param size       The maximum amount of connections that may be borrowed at
+	 *                   once.
+	 * @param statements The maximum amount of prepared statements to keep per
+	 *                   connection.
+	 * @param timeout    How long in milliseconds to wait for a connection before
+	 *                   failing.
+	 */
+	public ConnectionPool(Factory factory, int size, int statements, long timeout) {
+		if (size < 1 || statements < 1) {
+			throw new IllegalArgumentException("size and statements must be positive: " + size + ", " + statements);
+		}
+		this.factory = factory;
+		this.permits = new Semaphore(size, true);
+		this.statements = statements;
+		this.timeout = timeout;
+	}
+
+	public ConnectionPool(Factory factory, int size) {
+		this(factory, size, 64, 30_000L);
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if none are idle.
+	 *
+	 * @return The lease, which must be closed to return the connection.
+	 * @throws SQLTransientConnectionException if no connection became available in
+	 *                                         time.
+	 */
+	public Lease borrow() throws SQLException {
+		if (closed) {
+			throw new SQLException("Pool is closed.");
+		}
+		try {
+			if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+				throw new SQLTransientConnectionException("Timed out after " + timeout + "ms waiting on " + this);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException("Interrupted while waiting on " + this, ie);
+		}
+		try {
+			var lease = idle.pollFirst();
+			if (lease == null) {
+				return new Lease(factory.open());
+			}
+			lease.leased = true;
+			return lease;
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a connection shared by every caller that isn't aware of the pool.
+	 * This connection is not counted towards the size of the pool.
+	 *
+	 * @see #borrow()
+	 */
+	@Override
+	public Connection getConnection() {
+		var shared = this.shared;
+		if (shared == null) {
+			synchronized (this) {
+				if ((shared = this.shared) == null) {
+					try {
+						this.shared = shared = factory.open();
+					} catch (SQLException sql) {
+						throw new IllegalStateException("Unable to open the shared connection of " + this, sql);
+					}
+				}
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * Detects the dialect from the shared connection once, as every connection is
+	 * opened to the same database.
+	 */
+	@Override
+	public Dialect dialect() {
+		var dialect = this.dialect;
+		if (dialect == null) {
+			this.dialect = dialect = SqlConnectionProvider.super.dialect();
+		}
+		return dialect;
+	}
+
+	/** @return The limiter of concurrent queries, or null if not limited. */
+	@Override
+	public ConcurrencyLimiter limiter() {
+		return limiter;
+	}
+
+	/**
+	 * Sets the limit of concurrent queries, which should be kept at or below the
+	 * size of the pool, as queries over the size only wait on connections.
+	 *
+	 * @param limiter The limiter, or null to not limit.
+	 */
+	public void setLimiter(ConcurrencyLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	/** @return The amount of connections currently idle within the pool. */
+	public int idle() {
+		return idle.size();
+	}
+
+	/**
+	 * Closes every idle connection along with their statements. Borrowed
+	 * connections are closed as they're returned.
+	 */
+	@Override
+	public void close() throws DatabaseException {
+		closed = true;
+		ArrayList<Throwable> l = null;
+		Lease lease;
+		while ((lease = idle.pollFirst()) != null) {
+			try {
+				lease.connection.close();
+			} catch (SQLException sql) {
+				if (l == null) {
+					l = new ArrayList<>();
+				}
+				l.add(sql);
+			}
+		}
+		try {
+			var shared = this.shared;
+			if (shared != null) {
+				shared.close();
+			}
+		} catch (SQLException sql) {
+			if (l == null) {
+				l = new ArrayList<>();
+			}
+			l.add(sql);
+		}
+		if (l != null) {
+			var e = new DatabaseException(l.get(0), l.toArray());
+			for (int i = 1; i < l.size(); i++) {
+				e.addSuppressed(l.get(i));
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPool{idle=" + idle.size() + ", available=" + permits.availablePermits() + ", closed=" + closed
+				+ '}';
+	}
+
+	/**
+	 * Opens physical connections for the pool.
+	 */
+	@FunctionalInterface
+	public interface Factory {
+		Connection open() throws SQLException;
+	}
+
+	/**
+	 * A borrowed physical connection. Only to be used by the thread that borrowed
+	 * it, and must be closed to return it to the pool.
+	 */
+	public final class Lease implements AutoCloseable {
+		private final Connection connection;
+		private final Map<String, PreparedStatement> cache;
+		private boolean leased;
+
+		private Lease(Connection connection) {
+			this.connection = connection;
+			this.cache = new LinkedHashMap<>(16, 0.75F, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+					if (size() <= statements) {
+						return false;
+					}
+					try {
+						eldest.getValue().close();
+					} catch (SQLException sql) {
+						// Already closed or broken; either way it's being dropped.
+					}
+					return true;
+				}
+			};
+			this.leased = true;
+		}
+
+		public Connection connection() {
+			return connection;
+		}
+
+		/**
+		 * Gets the prepared statement for the SQL on this connection, preparing it if
+		 * this connection hasn't seen it yet.
+		 */
+		public PreparedStatement prepare(String sql) throws SQLException {
+			var statement = cache.get(sql);
+			if (statement == null || statement.isClosed()) {
+				// Exclusive as the lease is only used by one statement at a time.
+				cache.put(sql, statement = dialect().prepare(connection, sql, true));
+			}
+			return statement;
+		}
+
+		/**
+		 * Returns the connection to the pool, or closes it if the connection or pool
+		 * has been closed.
+		 */
+		@Override
+		public void close() throws SQLException {
+			if (!leased) {
+				return;
+			}
+			leased = false;
+			try {
+				if (closed || connection.isClosed()) {
+					connection.close();
+				} else {
+					// Most recently used first, keeping the hottest statements in use.
+					idle.offerFirst(this);
+					if (closed && idle.remove(this)) {
+						connection.close();
+					}
+				}
+			} finally {
+				permits.release();
+			}
+		}
+	}
+}
@@ -19,6 +19,10 @@ package net.kjp12.hachimitsu.database.api;// Created 2021-11-07T05:19:47
  * @since ${version}
  **/
 public class DatabaseException extends Exception {
+	protected DatabaseException(String message) {
+		super(message);
+	}
+
 	public DatabaseException(Throwable cause, Object related) {
 		super("Object/message related to " + cause + ": " + related, cause);
 	}
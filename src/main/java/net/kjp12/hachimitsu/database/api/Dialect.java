@@ -0,0 +1,132 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T15:41:09
+
+import net.kjp12.hachimitsu.database.api.annotation.Table;
+import net.kjp12.hachimitsu.database.api.annotation.Value;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Vendor specific SQL generation, chosen per
+ * {@link SqlConnectionProvider#dialect() provider}.
+ * <p>
+ * Every method defaults to the SQL the cache has always generated, being
+ * PostgreSQL-like, allowing a dialect to only override what differs.
+ *
+ * @author KJP12
+ * @since ${version}
+ * @see BuiltinDialect
+ **/
+public interface Dialect {
+	/**
+	 * Whether the database can match against a single array parameter with
+	 * <code>= any(?)</code>.
+	 */
+	default boolean arrays() {
+		return false;
+	}
+
+	/**
+	 * Appends access of the nested fields onto the column.
+	 *
+	 * @param sql    The SQL, ending with the column.
+	 * @param start  The offset the column starts at.
+	 * @param fields The {@link Value#value() path} after the column.
+	 */
+	default void field(StringBuilder sql, int start, String[] fields) {
+		for (var field : fields) {
+			sql.insert(start, '(').append(").").append(field);
+		}
+	}
+
+	/**
+	 * Appends the pagination placeholders, which are always bound as limit then
+	 * offset.
+	 */
+	default void paginate(StringBuilder sql, boolean limit, boolean offset) {
+		if (limit) {
+			sql.append(" limit ?");
+		}
+		if (offset) {
+			sql.append(" offset ?");
+		}
+	}
+
+	/**
+	 * Hints that the {@link Table#index() index} should be used for the table.
+	 * Ignored by default.
+	 *
+	 * @param statement The statement written so far, for hints that must prefix
+	 *                  the statement.
+	 * @param table     The table reference, for hints that follow the table.
+	 * @param name      The alias of the table, or its name if the primary table.
+	 * @param index     The index to use.
+	 */
+	default void index(StringBuilder statement, StringBuilder table, String name, String index) {
+	}
+
+	/**
+	 * Prepares a forward-only read-only statement.
+	 *
+	 * @param exclusive Whether the connection is exclusive to the statement until
+	 *                  the result has been consumed, allowing results to be
+	 *                  streamed where that would otherwise block the connection.
+	 */
+	default PreparedStatement prepare(Connection connection, String sql, boolean exclusive) throws SQLException {
+		return connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+	}
+
+	/**
+	 * Prefixes the statement to get its plan rather than its result.
+	 */
+	default String explain(String sql) {
+		return "explain " + sql;
+	}
+
+	/**
+	 * Finds full scans and sorts within the plan. By default, reads the output of
+	 * PostgreSQL, being <code>Seq Scan on table (... rows=n ...)</code>.
+	 *
+	 * @param plan      The lines of the plan.
+	 * @param threshold Estimated amount of rows under which scans are ignored.
+	 *                  Scans without an estimate are always reported.
+	 * @param warnings  The list to add a description of each scan to.
+	 */
+	default void scans(List<String> plan, long threshold, List<String> warnings) {
+		BuiltinDialect.postgresScans(plan, threshold, warnings);
+	}
+
+	/**
+	 * Detects the dialect of the connection by the database's product name,
+	 * falling back onto {@link BuiltinDialect#STANDARD}.
+	 */
+	static Dialect detect(Connection connection) throws SQLException {
+		var product = connection.getMetaData().getDatabaseProductName();
+		if (product == null) {
+			return BuiltinDialect.STANDARD;
+		}
+		for (var dialect : BuiltinDialect.values()) {
+			if (dialect.matches(product)) {
+				return dialect;
+			}
+		}
+		return BuiltinDialect.STANDARD;
+	}
+}
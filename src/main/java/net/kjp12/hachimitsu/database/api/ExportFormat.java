@@ -0,0 +1,47 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T21:02:44
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Format of rows
+ * {@link StatementCache#export(DatabaseRecord, WritableByteChannel,
+ * ExportFormat) exported} straight from the result set.
+ * <p>
+ * Columns are written as read by the type of the proxy's parameter, with text
+ * being UTF-8, and large binary types being streamed.
+ *
+ * @author KJP12
+ * @since ${version}
+ **/
+public enum ExportFormat {
+	/**
+	 * Comma separated values as of RFC 4180, starting with a header of the column
+	 * labels, each row ending with <code>\r\n</code>. Fields are only quoted when
+	 * containing a comma, a quote or a line break, where quotes are doubled. Null
+	 * is an empty field, while an empty string is quoted. Binary is written as
+	 * hexadecimal.
+	 */
+	CSV,
+	/**
+	 * Every column of every row in order, without any header nor separators. Each
+	 * value is prefixed by its length in bytes as a big-endian int, being -1 when
+	 * null. Booleans are a single byte, integral and floating types are
+	 * big-endian in the width of the parameter's type, and text is UTF-8. Binary
+	 * is instead a sequence of such prefixed chunks, ending with an empty chunk.
+	 */
+	BINARY
+}
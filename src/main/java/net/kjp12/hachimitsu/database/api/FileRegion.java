@@ -0,0 +1,34 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T18:31:47
+
+import java.nio.channels.FileChannel;
+
+/**
+ * A region of a file, bound as a binary column by reading the region directly
+ * from the channel.
+ * <p>
+ * When mapped from a column, the region is the whole of a temporary file that
+ * is deleted once the channel is closed, which is left to the caller.
+ *
+ * @param channel  The channel to read from. Positional reads are used, as such,
+ *                 the channel's own position is left as is.
+ * @param position The offset of the region within the file.
+ * @param size     The length of the region.
+ * @author KJP12
+ * @since ${version}
+ **/
+public record FileRegion(FileChannel channel, long position, long size) {
+}
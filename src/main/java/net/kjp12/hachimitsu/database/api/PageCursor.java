@@ -0,0 +1,132 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T13:48:26
+
+import net.kjp12.hachimitsu.database.api.annotation.Pagination;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+/**
+ * Cursor over a {@link Pagination paginated} cache that fetches the following
+ * pages in the background while the current page is being consumed.
+ * <p>
+ * Pages are fetched one after another, with up to the read-ahead amount of
+ * pages being buffered at any point. Closing the cursor cancels any page that
+ * has yet to be fetched.
+ *
+ * @author KJP12
+ * @since ${version}
+ * @see StatementCache#prefetch(IntFunction, int)
+ **/
+public final class PageCursor<I extends DatabaseRecord<?>> implements AutoCloseable {
+	private final ArrayDeque<CompletableFuture<I>> pending = new ArrayDeque<>();
+	private final StatementCache<I> cache;
+	private final IntFunction<I> pages;
+	private final Executor executor;
+	private final int readAhead;
+	private CompletableFuture<I> tail = CompletableFuture.completedFuture(null);
+	private volatile boolean closed;
+	private boolean end;
+	private int page;
+
+	PageCursor(StatementCache<I> cache, IntFunction<I> pages, Executor executor, int readAhead) {
+		this.cache = cache;
+		this.pages = pages;
+		this.executor = executor;
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * Gets the next page, waiting for it to be fetched if necessary.
+	 *
+	 * @return The completed record of the page, or null if the pages have been
+	 *         exhausted.
+	 * @throws DatabaseException if fetching the page failed.
+	 */
+	public I next() throws DatabaseException {
+		if (closed) {
+			throw new IllegalStateException("Cursor has been closed.");
+		}
+		if (pending.isEmpty()) {
+			schedule();
+		}
+		var future = pending.pollFirst();
+		if (future == null) {
+			return null;
+		}
+		// Keeps the fetcher busy while this page is being consumed.
+		while (pending.size() < readAhead && schedule()) {
+			// Scheduled.
+		}
+		try {
+			return future.join();
+		} catch (CompletionException ce) {
+			if (ce.getCause() instanceof DatabaseException de) {
+				throw de;
+			}
+			throw ce;
+		}
+	}
+
+	/**
+	 * Schedules the next page to be fetched once the previous page has been.
+	 *
+	 * @return false if there are no more pages.
+	 */
+	private boolean schedule() {
+		if (end) {
+			return false;
+		}
+		var record = pages.apply(page++);
+		if (record == null) {
+			end = true;
+			return false;
+		}
+		var future = tail.handle((r, t) -> record).thenApplyAsync(this::fetch, executor);
+		pending.addLast(future);
+		tail = future;
+		return true;
+	}
+
+	private I fetch(I record) {
+		if (closed) {
+			throw new CancellationException();
+		}
+		try {
+			cache.handle(record);
+		} catch (DatabaseException de) {
+			throw new CompletionException(de);
+		}
+		return record;
+	}
+
+	/**
+	 * Stops fetching pages, cancelling any page that has yet to be fetched. A page
+	 * that is currently being fetched will be ran to completion.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		CompletableFuture<I> future;
+		while ((future = pending.pollFirst()) != null) {
+			future.cancel(false);
+		}
+	}
+}
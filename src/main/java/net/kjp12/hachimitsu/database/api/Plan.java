@@ -0,0 +1,45 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T16:20:44
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Query plan of a generated statement, as captured by the
+ * {@link Dialect#explain(String) dialect's explain} on the first use of the
+ * handler.
+ *
+ * @param flags    The flags of the handler.
+ * @param sql      The statement that was explained.
+ * @param lines    The plan, one line per row or line of the output.
+ * @param warnings Full scans and sorts found within the plan, empty if none.
+ * @author KJP12
+ * @since ${version}
+ * @see StatementCache#setExplain(long, Consumer)
+ **/
+public record Plan(int flags, String sql, List<String> lines, List<String> warnings) {
+	@Override
+	public String toString() {
+		var builder = new StringBuilder("Plan of ").append(flags).append(": ").append(sql);
+		for (var line : lines) {
+			builder.append("\n\t").append(line);
+		}
+		for (var warning : warnings) {
+			builder.append("\n! ").append(warning);
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,132 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T16:58:13
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded in-memory log of slow and sampled queries, keeping only the most
+ * recent entries. May be shared between caches.
+ * <p>
+ * Bound parameters are only captured once a query is known to be logged, by
+ * binding the record a second time, as such, queries under the threshold that
+ * weren't sampled cost no more than reading the clock.
+ *
+ * @author KJP12
+ * @since ${version}
+ * @see StatementCache#setSlowQueryLog(SlowQueryLog)
+ **/
+public final class SlowQueryLog {
+	private final AtomicReferenceArray<Entry> ring;
+	private final AtomicLong next = new AtomicLong();
+	private final long threshold;
+	private final double sampleRate;
+	private final boolean redact;
+
+	/**
+	 * @param capacity   The amount of entries to keep.
+	 * @param threshold  The duration from which queries are always logged.
+	 * @param sampleRate The chance between 0 and 1 of logging a query under the
+	 *                   threshold.
+	 * @param redact     Whether to only log the type of bound parameters.
+	 */
+	public SlowQueryLog(int capacity, Duration threshold, double sampleRate, boolean redact) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		if (sampleRate < 0D || sampleRate > 1D) {
+			throw new IllegalArgumentException("sampleRate must be within [0, 1]: " + sampleRate);
+		}
+		this.ring = new AtomicReferenceArray<>(capacity);
+		this.threshold = threshold.toNanos();
+		this.sampleRate = sampleRate;
+		this.redact = redact;
+	}
+
+	/** @return The threshold in nanoseconds. */
+	public long threshold() {
+		return threshold;
+	}
+
+	/** @return Whether a query under the threshold should be logged. */
+	public boolean sample() {
+		return sampleRate > 0D && ThreadLocalRandom.current().nextDouble() < sampleRate;
+	}
+
+	/**
+	 * Adds the entry, overwriting the oldest if full. Parameters are redacted
+	 * here if configured to.
+	 */
+	public void record(Entry entry) {
+		if (redact) {
+			var redacted = new ArrayList<Object>(entry.parameters.size());
+			for (var parameter : entry.parameters) {
+				redacted.add(parameter == null ? null : '<' + parameter.getClass().getSimpleName() + '>');
+			}
+			entry = new Entry(entry.time, entry.sql, entry.flags, redacted, entry.executing, entry.mapping,
+					entry.rows, entry.slow);
+		}
+		ring.set((int) (next.getAndIncrement() % ring.length()), entry);
+	}
+
+	/** @return The entries currently held, oldest first. */
+	public List<Entry> entries() {
+		long end = next.get(), start = Math.max(0L, end - ring.length());
+		var entries = new ArrayList<Entry>((int) (end - start));
+		for (long i = start; i < end; i++) {
+			var entry = ring.get((int) (i % ring.length()));
+			if (entry != null) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/** Writes every entry currently held, oldest first, one per line. */
+	public void dump(Appendable out) throws IOException {
+		for (var entry : entries()) {
+			out.append(entry.toString()).append('\n');
+		}
+	}
+
+	/**
+	 * A single logged query.
+	 *
+	 * @param time       When the query finished.
+	 * @param sql        The statement that was ran.
+	 * @param flags      The flags of the record.
+	 * @param parameters The bound parameters in order, excluding those bound by
+	 *                   the handler itself.
+	 * @param executing  Nanoseconds spent executing, summed across partitions.
+	 * @param mapping    Nanoseconds spent mapping, summed across partitions.
+	 * @param rows       The amount of rows the record was completed with.
+	 * @param slow       Whether the threshold was crossed, otherwise sampled.
+	 */
+	public record Entry(Instant time, String sql, int flags, List<Object> parameters, long executing, long mapping,
+			int rows, boolean slow) {
+		@Override
+		public String toString() {
+			return time + (slow ? " SLOW " : " SAMPLE ") + (executing / 1000L) + "us+" + (mapping / 1000L) + "us "
+					+ rows + " rows, flags " + flags + ": " + sql + ' ' + parameters;
+		}
+	}
+}
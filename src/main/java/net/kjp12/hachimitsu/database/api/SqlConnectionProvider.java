@@ -14,7 +14,10 @@
 
 package net.kjp12.hachimitsu.database.api;// Created 2021-14-06T14:58:12
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.sql.Connection;
+import java.sql.SQLException;
 
 /**
  * @author KJP12
@@ -22,4 +25,40 @@ import java.sql.Connection;
  **/
 public interface SqlConnectionProvider {
 	Connection getConnection();
+
+	/**
+	 * The dialect to generate SQL in. Detected from the connection by default,
+	 * and only queried once per cache.
+	 */
+	default Dialect dialect() {
+		try {
+			return Dialect.detect(getConnection());
+		} catch (SQLException | RuntimeException e) {
+			return BuiltinDialect.STANDARD;
+		}
+	}
+
+	/**
+	 * The limit of concurrent queries against this provider, shared between every
+	 * cache using it. None by default.
+	 *
+	 * @return The limiter, or null to not limit.
+	 */
+	default ConcurrencyLimiter limiter() {
+		return null;
+	}
+
+	/**
+	 * The channel to stream a column into while its row is current, called once
+	 * per row for each non-null column mapped as a {@link WritableByteChannel}.
+	 * The channel is left open, and is passed onto the proxy once written.
+	 *
+	 * @param column The name of the column, as given by its
+	 *               {@link net.kjp12.hachimitsu.database.api.annotation.Value}.
+	 * @return The channel to write the column into.
+	 * @throws IOException If the channel cannot be opened.
+	 */
+	default WritableByteChannel sink(String column) throws IOException {
+		throw new UnsupportedOperationException("No sink for column " + column + " on " + this);
+	}
 }
@@ -0,0 +1,181 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T19:47:31
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Global budget of prepared statements and generated handlers, shared between
+ * every cache registered with it, keeping the sum of all caches under the
+ * server's prepared statement limit and bounding the classes generated.
+ * <p>
+ * Once over either limit, the coldest handler across all registered caches is
+ * chosen by its approximate hits, which are halved once per limit worth of
+ * evictions, as such, handlers that were once hot but no longer are used
+ * eventually go cold. For
+ * statements, only the statements of the chosen handler are closed, while for
+ * handlers, the handler is removed from its cache altogether, allowing its
+ * class to be unloaded.
+ * <p>
+ * Statements past the limit that could not be made room for aren't prepared,
+ * failing the record with a {@link java.sql.SQLTransientException}, including
+ * statements prepared and closed for a single record. Handlers may go over the
+ * limit when every other handler is in use, as the record must be handled
+ * either way.
+ *
+ * @author KJP12
+ * @since ${version}
+ * @see StatementCache#setBudget(StatementBudget)
+ **/
+public final class StatementBudget {
+	/** Registered caches, weakly as to not keep abandoned caches alive. */
+	private final Set<StatementCache<?>> caches = Collections
+			.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+	private final AtomicInteger statements = new AtomicInteger(), handlers = new AtomicInteger();
+	private final int maxStatements, maxHandlers;
+	/** Evictions since every handler was last aged. Guarded by caches. */
+	private int evictions;
+
+	/**
+	 * @param statements The maximum amount of statements prepared across all
+	 *                   caches. Should be under the server's limit, as
+	 *                   connection pools aren't counted.
+	 * @param handlers   The maximum amount of handlers across all caches.
+	 */
+	public StatementBudget(int statements, int handlers) {
+		if (statements < 1 || handlers < 1) {
+			throw new IllegalArgumentException("limits must be positive: " + statements + ", " + handlers);
+		}
+		this.maxStatements = statements;
+		this.maxHandlers = handlers;
+	}
+
+	/** @return The amount of statements currently prepared. */
+	public int statements() {
+		return statements.get();
+	}
+
+	/** @return The amount of handlers currently held. */
+	public int handlers() {
+		return handlers.get();
+	}
+
+	void register(StatementCache<?> cache) {
+		caches.add(cache);
+	}
+
+	void unregister(StatementCache<?> cache) {
+		caches.remove(cache);
+	}
+
+	/**
+	 * Counts a statement about to be kept by the handler, closing the statements
+	 * of the coldest other handlers while over the limit. Must be followed by
+	 * {@link #releaseStatement()} once closed if successful.
+	 *
+	 * @param requester Identifies the handler preparing the statement, whose
+	 *                  statements are never closed.
+	 * @return Whether the statement is within the limit, otherwise it isn't
+	 *         counted and shouldn't be kept.
+	 */
+	public boolean reserveStatement(Object requester) {
+		if (statements.incrementAndGet() <= maxStatements) {
+			return true;
+		}
+		// Statements still in use are only closed once released, as such, the count
+		// may not drop straight away; each victim is only chosen once.
+		while (evict(true, requester)) {
+			if (statements.get() <= maxStatements) {
+				return true;
+			}
+		}
+		statements.decrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Counts a statement regardless of the limit, for the statement every
+	 * handler prepares upfront, still making room where possible.
+	 */
+	public void forceStatement(Object requester) {
+		if (statements.incrementAndGet() > maxStatements) {
+			while (statements.get() > maxStatements && evict(true, requester)) {
+				// Evicting until within the limit or nothing is left.
+			}
+		}
+	}
+
+	/** Uncounts a statement that has been closed. */
+	public void releaseStatement() {
+		statements.decrementAndGet();
+	}
+
+	/**
+	 * Counts a handler about to be added, removing the coldest handlers while
+	 * over the limit. Must not be called while holding the lock of any cache.
+	 */
+	void reserveHandler() {
+		if (handlers.incrementAndGet() > maxHandlers) {
+			while (handlers.get() > maxHandlers && evict(false, null)) {
+				// Evicting until within the limit or nothing is left.
+			}
+		}
+	}
+
+	/** Uncounts a handler that has been removed or collected. */
+	void releaseHandler() {
+		handlers.decrementAndGet();
+	}
+
+	/**
+	 * Evicts the coldest handler across all caches, aging every handler once
+	 * enough have been evicted.
+	 *
+	 * @param statements Whether to only close the handler's statements.
+	 * @param except     The handler to never choose.
+	 * @return Whether a handler was evicted.
+	 */
+	private boolean evict(boolean statements, Object except) {
+		StatementCache<?> owner = null;
+		StatementCache.HandlerEntry victim = null;
+		synchronized (caches) {
+			for (var cache : caches) {
+				var entry = cache.coldest(statements, except);
+				if (entry != null && (victim == null || entry.hits < victim.hits)) {
+					owner = cache;
+					victim = entry;
+				}
+			}
+			if (victim != null && ++evictions >= Math.min(maxStatements, maxHandlers)) {
+				evictions = 0;
+				for (var cache : caches) {
+					cache.age();
+				}
+			}
+		}
+		if (victim == null) {
+			return false;
+		}
+		if (statements) {
+			victim.closeStatements();
+		} else {
+			owner.evict(victim);
+		}
+		return true;
+	}
+}
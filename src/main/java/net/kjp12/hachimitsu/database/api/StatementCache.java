@@ -14,16 +14,28 @@
 
 package net.kjp12.hachimitsu.database.api;// Created 2021-05-06T15:00:03
 
+import net.kjp12.hachimitsu.database.api.annotation.Aggregate;
+import net.kjp12.hachimitsu.database.api.annotation.GroupBy;
 import net.kjp12.hachimitsu.database.api.annotation.Pagination;
 import net.kjp12.hachimitsu.database.api.annotation.Query;
+import net.kjp12.hachimitsu.database.api.annotation.Shape;
+import net.kjp12.hachimitsu.database.api.annotation.Split;
 import net.kjp12.hachimitsu.database.api.annotation.Table;
 import net.kjp12.hachimitsu.database.api.annotation.Value;
+import net.kjp12.hachimitsu.database.api.annotation.Watch;
 import net.kjp12.hachimitsu.database.impl.C0;
 import net.kjp12.hachimitsu.database.impl.ClassMap;
+import net.kjp12.hachimitsu.database.impl.Memo;
+import net.kjp12.hachimitsu.database.impl.Parameters;
+import net.kjp12.hachimitsu.database.impl.Settings;
 import net.kjp12.hachimitsu.database.impl.StatementHandler;
+import net.kjp12.hachimitsu.database.impl.StatementPools;
+import net.kjp12.hachimitsu.database.impl.Variant;
 import org.objectweb.asm.*;
 
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.invoke.VarHandle;
@@ -31,13 +43,28 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.SQLTransientException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
 
 /**
  * @author KJP12
@@ -47,18 +74,34 @@ public final class StatementCache<I extends DatabaseRecord<?>> { // I - Input |
 	private static final MethodHandles.Lookup SELF = MethodHandles.lookup();
 	private static final VarHandle TABLE = MethodHandles.arrayElementVarHandle(HandlerEntry[].class);
 
-	private static final String STATEMENT_TYPE = Type.getInternalName(PreparedStatement.class),
-			STATEMENT_DESCRIPTOR = Type.getDescriptor(PreparedStatement.class),
-			RESULT_SET_TYPE = Type.getInternalName(ResultSet.class),
-			RESULT_SET_DESCRIPTOR = Type.getDescriptor(ResultSet.class);
+	private static final String STATEMENT_DESCRIPTOR = Type.getDescriptor(PreparedStatement.class),
+			RESULT_SET_TYPE = Type.getInternalName(ResultSet.class);
 
-	private static final Type STRING_TYPE = Type.getType(String.class);
+	private static final Type OBJECT_TYPE = Type.getType(Object.class);
+	/** Discards the class, for when only the variant is wanted. */
+	private static final ClassVisitor DISCARD = new ClassVisitor(Opcodes.ASM9) {
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			return new MethodVisitor(Opcodes.ASM9) {
+			};
+		}
+	};
 
 	private final ReferenceQueue<StatementHandler> queue = new ReferenceQueue<>();
-	private HandlerEntry[] table = new HandlerEntry[16];
+	private final Settings settings = new Settings();
+	private volatile HandlerEntry[] table = new HandlerEntry[16];
 	private final SqlConnectionProvider sqlImpl;
 	private final Method proxy;
 	private final Class<I> iClass;
+	private Dialect dialect;
+	private volatile boolean polymorphic, tiered;
+	/** Constructor of the class shared by every variant when polymorphic. */
+	private volatile MethodHandle shared;
+	/** Pollers of every watched record, keyed by flags and parameters. */
+	private final ConcurrentHashMap<Watcher.Key, Watcher.Poller<I>> watches = new ConcurrentHashMap<>();
+	/** Memos of the provider's methods, shared by every handler. */
+	private final ConcurrentHashMap<Method, Memo> memos = new ConcurrentHashMap<>();
 
 	public StatementCache(SqlConnectionProvider sqlImpl, Class<I> iClass, Method proxy) {
 		this.sqlImpl = sqlImpl;
@@ -66,6 +109,220 @@ public final class StatementCache<I extends DatabaseRecord<?>> { // I - Input |
 		this.proxy = proxy;
 	}
 
+	/**
+	 * Sets the executor used for running {@link Split split} partitions, hedged
+	 * requests and {@link #prefetch(IntFunction, int) prefetching}.
+	 * <p>
+	 * Defaults to the {@link java.util.concurrent.ForkJoinPool#commonPool() common
+	 * pool}, which is compensated for while partitions are blocked on the
+	 * database.
+	 */
+	public void setExecutor(Executor executor) {
+		settings.executor = executor;
+	}
+
+	/**
+	 * Sets the default deadline for all statements, after which the statement will
+	 * be cancelled and a {@link java.sql.SQLTimeoutException} raised.
+	 *
+	 * @param timeout The deadline, or {@link Duration#ZERO} to disable.
+	 * @see Query#timeout()
+	 */
+	public void setTimeout(Duration timeout) {
+		settings.timeout = timeout.toMillis();
+	}
+
+	/**
+	 * Enables hedged requests. When a statement hasn't answered by the percentile
+	 * of the handler's recent latency, the same statement will be sent to the
+	 * replica, using whichever answers first and cancelling the other.
+	 *
+	 * @param percentile The percentile between 0 and 1 exclusive, or 0 to disable.
+	 * @param replica    The provider to send hedged requests to. May be null to
+	 *                   borrow a second connection when the cache's provider is
+	 *                   a {@link ConnectionPool}.
+	 * @throws IllegalArgumentException if there is no replica nor pool to obtain
+	 *                                  a second connection from.
+	 */
+	public void setHedging(double percentile, SqlConnectionProvider replica) {
+		if (percentile < 0D || percentile >= 1D) {
+			throw new IllegalArgumentException("percentile must be within [0, 1): " + percentile);
+		}
+		// The hedge would otherwise queue behind the slow statement on its connection.
+		if (percentile > 0D && replica == null && !(sqlImpl instanceof ConnectionPool)) {
+			throw new IllegalArgumentException("hedging requires a replica or a ConnectionPool: " + sqlImpl);
+		}
+		settings.replica = replica;
+		settings.hedge = percentile;
+	}
+
+	/**
+	 * Enables capturing the plan of every handler on first use, running the
+	 * dialect's explain on the cache's executor with the values of the first
+	 * record. Meant for diagnosing missing indices before they matter, not for
+	 * use in production.
+	 *
+	 * @param rows     Estimated amount of rows from which full scans and sorts
+	 *                 are reported, or negative to disable.
+	 * @param listener Receives every plan. May be null to only keep the plans
+	 *                 for {@link #plans()}.
+	 * @see Dialect#scans(List, long, List)
+	 */
+	public void setExplain(long rows, Consumer<Plan> listener) {
+		settings.plans = listener;
+		settings.explain = rows;
+	}
+
+	/**
+	 * Sets the log to record slow and sampled queries of this cache to.
+	 *
+	 * @param log The log, or null to stop logging.
+	 */
+	public void setSlowQueryLog(SlowQueryLog log) {
+		settings.slowLog = log;
+	}
+
+	/**
+	 * Generates a single handler class shared by every flags value, rather than a
+	 * class per flags value. Each query's values are then bound behind a test of
+	 * the handler's flags, while the SQL and statements remain per flags value.
+	 * <p>
+	 * Trades a branch per query for far fewer classes where many flags values are
+	 * in use, allowing the JIT to share the same compiled code across all of them.
+	 * As queries may not run, variables may only be shared across queries when
+	 * loaded with <code>?</code>. Handlers already generated are kept.
+	 *
+	 * @param polymorphic Whether to share a single class.
+	 */
+	public void setPolymorphic(boolean polymorphic) {
+		this.polymorphic = polymorphic;
+	}
+
+	/**
+	 * Enables tiered generation. A flags value seen for the first time runs on the
+	 * {@link #setPolymorphic(boolean) shared class} straight away, only building
+	 * its SQL, while the class specific to the flags is generated on the executor
+	 * and swapped in once ready.
+	 * <p>
+	 * The shared class itself is generated on first use of the cache. Has no
+	 * effect while polymorphic, as the shared class is then always used.
+	 *
+	 * @param tiered Whether to generate specific classes in the background.
+	 */
+	public void setTiered(boolean tiered) {
+		this.tiered = tiered;
+	}
+
+	/**
+	 * Sets how many statements each handler may prepare to run concurrently.
+	 * Statements are prepared on demand, closing those idle for longer than the
+	 * timeout, except for the last. Records beyond the limit run on a statement
+	 * prepared and closed for that record alone.
+	 * <p>
+	 * Not used when the provider is a {@link ConnectionPool}, as statements are
+	 * then cached per borrowed connection.
+	 *
+	 * @param max  The maximum amount of statements per handler, defaulting to the
+	 *             amount of processors.
+	 * @param idle The duration after which surplus statements are closed,
+	 *             defaulting to a minute.
+	 */
+	public void setStatementPool(int max, Duration idle) {
+		if (max < 1) {
+			throw new IllegalArgumentException("max must be positive: " + max);
+		}
+		settings.statementIdle = idle.toMillis();
+		settings.statements = max;
+	}
+
+	/**
+	 * Enables pipelined mapping of lists, for proxies that are costly to call. Rows
+	 * are read in batches by the querying thread, while the proxy is called on the
+	 * cache's executor for every batch read so far, keeping the connection busy
+	 * rather than waiting on the proxy.
+	 * <p>
+	 * Rows are always completed in the order they were read, as such, any
+	 * {@link Pagination#sort() sort} is kept. Each batch's buffers are reused once
+	 * built, bounding the rows held to those of the batches in flight.
+	 *
+	 * @param batch   The amount of rows read per batch, or 0 to disable.
+	 * @param workers The maximum amount of batches being built at once, after
+	 *                which reading waits on the oldest batch.
+	 */
+	public void setPipeline(int batch, int workers) {
+		if (batch < 0 || workers < 1) {
+			throw new IllegalArgumentException("batch must not be negative and workers must be positive: " + batch
+					+ ", " + workers);
+		}
+		settings.pipelineWorkers = workers;
+		settings.pipeline = batch;
+	}
+
+	/**
+	 * Registers the cache with the budget, sharing its limits of statements and
+	 * handlers with every other cache registered, where the coldest across all of
+	 * them are evicted first.
+	 * <p>
+	 * Should be set before the cache is used, as handlers and statements already
+	 * present aren't counted.
+	 *
+	 * @param budget The budget, or null to unregister.
+	 */
+	public void setBudget(StatementBudget budget) {
+		var previous = settings.budget;
+		if (previous != null) {
+			previous.unregister(this);
+		}
+		if (budget != null) {
+			budget.register(this);
+		}
+		settings.budget = budget;
+	}
+
+	/**
+	 * Sets the priority of this cache's queries within the provider's
+	 * {@link SqlConnectionProvider#limiter() limiter}, where higher priorities are
+	 * admitted first. Defaults to 0.
+	 */
+	public void setPriority(int priority) {
+		settings.priority = priority;
+	}
+
+	/**
+	 * Enables single-flight deduplication. Records of the same flags binding the
+	 * same values while an identical query is still running attach onto it rather
+	 * than running their own, being completed with its result.
+	 * <p>
+	 * Results are shared as is by passing {@link UnaryOperator#identity()},
+	 * otherwise, each attached record is completed with the copier's result.
+	 * Only the running query is shared, nothing is cached once it has completed.
+	 *
+	 * @param copier Applied onto the shared result for each attached record, or
+	 *               null to disable.
+	 */
+	public void setSingleFlight(UnaryOperator<Object> copier) {
+		settings.singleFlight = copier;
+	}
+
+	/**
+	 * Gets the plans captured so far of every handler within the cache.
+	 *
+	 * @see #setExplain(long, Consumer)
+	 */
+	public List<Plan> plans() {
+		var plans = new ArrayList<Plan>();
+		for (var entry : table) {
+			var handler = entry == null ? null : entry.get();
+			if (handler != null) {
+				var plan = handler.plan();
+				if (plan != null) {
+					plans.add(plan);
+				}
+			}
+		}
+		return plans;
+	}
+
 	/**
 	 * Closes all prepared statements within the cache.
 	 *
@@ -79,7 +336,7 @@ public final class StatementCache<I extends DatabaseRecord<?>> { // I - Input |
 					continue;
 				}
 				try {
-					entry.close();
+					entry.closeStatements();
 				} catch (Exception e) {
 					if (l == null) {
 						l = new ArrayList<>();
@@ -106,24 +363,295 @@ public final class StatementCache<I extends DatabaseRecord<?>> { // I - Input |
 		}
 	}
 
+	/**
+	 * Forgets every memoized provider call, as to be called once the provider's
+	 * results change.
+	 *
+	 * @see C0
+	 */
+	public void invalidate() {
+		memos.values().forEach(Memo::invalidate);
+	}
+
+	/**
+	 * Forgets the memoized calls of the provider's methods of the name.
+	 *
+	 * @param method The name of the method.
+	 */
+	public void invalidate(String method) {
+		memos.forEach((m, memo) -> {
+			if (m.getName().equals(method)) {
+				memo.invalidate();
+			}
+		});
+	}
+
 	public void handle(I i) throws DatabaseException {
+		var handler = handler(i.flags());
+		run(handler, i, executing -> {
+			handler.query(i, executing);
+			return null;
+		});
+	}
+
+	/**
+	 * Writes the rows of the record straight from the result set onto the
+	 * channel, without mapping them nor completing the record. Uses the same
+	 * statement as {@link #handle(DatabaseRecord)}.
+	 * <p>
+	 * Memory use is constant as long as the driver streams the result, as it does
+	 * for statements of a {@link ConnectionPool}.
+	 *
+	 * @param channel The channel to write to, which is left open.
+	 * @param format  The format to write in.
+	 * @return The amount of rows written.
+	 * @throws DatabaseException if the query or writing failed, in which case the
+	 *                           channel may contain a partial export.
+	 */
+	public long export(I i, WritableByteChannel channel, ExportFormat format) throws DatabaseException {
+		var handler = handler(i.flags());
+		return (Long) run(handler, i, executing -> handler.export(i, channel, format, executing));
+	}
+
+	/**
+	 * Fetches the rows of the watched record past the mark without completing the
+	 * record.
+	 *
+	 * @param parameters The parameters captured from the record when watched.
+	 * @param mark       Holds the high-water mark, updated to that of the last
+	 *                   row.
+	 * @return The rows past the mark.
+	 */
+	Object poll(I i, Parameters parameters, long[] mark) throws DatabaseException {
+		var handler = handler(i.flags());
+		return run(handler, i, executing -> handler.poll(i, parameters, mark, executing));
+	}
+
+	/** Gets the handler of the flags, generating it if necessary. */
+	private StatementHandler handler(int flags) throws DatabaseException {
 		// Before anything, clean the table.
 		cleanTable();
-		int flags = i.flags();
-		int index = flags & (table.length - 1);
-		var entry = table[index];
+		var table = this.table;
+		var entry = (HandlerEntry) TABLE.getAcquire(table, flags & (table.length - 1));
 		StatementHandler handler;
-		if (entry == null || entry.refersTo(null)) {
-			handler = add(i, index);
-		} else if (entry.flags != flags) {
-			handler = add(i, flags & resize(flags));
+		if (entry == null || entry.flags != flags || (handler = entry.get()) == null) {
+			if (tiered && !polymorphic) {
+				var interim = surrogate(flags, true);
+				handler = admit(flags, interim);
+				if (handler == interim) {
+					promote(flags, interim);
+				}
+			} else {
+				handler = admit(flags, surrogate(flags, polymorphic));
+			}
 		} else {
-			handler = entry.get();
-			if (handler == null) {
-				handler = add(i, index);
+			entry.hits++;
+		}
+		return handler;
+	}
+
+	/**
+	 * Runs the record within the provider's limiter, sampling only the time spent
+	 * executing statements, as to exclude waiting on statements or connections
+	 * and completing the record.
+	 *
+	 * @return The result of the fetch.
+	 */
+	private Object run(StatementHandler handler, I i, Fetch fetch) throws DatabaseException {
+		var limiter = sqlImpl.limiter();
+		if (limiter != null) {
+			limiter.acquire(settings.priority);
+		}
+		var executing = new long[1];
+		boolean dropped = false;
+		try {
+			handler.explain(i);
+			return fetch.fetch(executing);
+		} catch (SQLException sql) {
+			// Timeouts and the like are taken as the database being overloaded.
+			dropped = sql instanceof SQLTransientException;
+			throw new DatabaseException(sql, i, handler);
+		} catch (IOException io) {
+			throw new DatabaseException(io, i, handler);
+		} finally {
+			if (limiter != null) {
+				limiter.release(executing[0], dropped);
+			}
+		}
+	}
+
+	/**
+	 * Creates a cursor over the pages of this cache, fetching the following pages
+	 * on the cache's executor while the current page is being consumed.
+	 *
+	 * @param pages     Creates the record for the given page, starting at 0.
+	 *                  Returning null marks the end of the pages.
+	 * @param readAhead The maximum amount of pages to fetch ahead of the consumer.
+	 * @return The cursor, which should be closed once the consumer stops.
+	 * @throws IllegalStateException if the proxy isn't paginated.
+	 */
+	public PageCursor<I> prefetch(IntFunction<I> pages, int readAhead) {
+		if (!proxy.isAnnotationPresent(Pagination.class)) {
+			throw new IllegalStateException(proxy + " is not paginated.");
+		}
+		if (readAhead < 1) {
+			throw new IllegalArgumentException("readAhead must be positive: " + readAhead);
+		}
+		return new PageCursor<>(this, pages, settings.executor, readAhead);
+	}
+
+	/**
+	 * Watches the record for new rows, polling on the cache's executor for rows
+	 * past the high-water mark of the {@link Watch watched} column.
+	 * <p>
+	 * Records of the same flags binding the same values share a single poller,
+	 * polling at the interval of the first. The first poll selects every row, with
+	 * records joining an existing poller only seeing rows past its mark. Failed
+	 * polls are kept as the {@link Watcher#failure() failure} of the watcher, and
+	 * retried after backing off.
+	 *
+	 * @param record   Completed with the new rows of every poll that found any.
+	 * @param interval The delay between polls.
+	 * @param jitter   The fraction between 0 and 1 by which the delay randomly
+	 *                 varies, spreading apart the polls of many watchers.
+	 * @return The watcher, which should be closed once no longer needed.
+	 * @throws IllegalStateException if the proxy isn't watched.
+	 * @throws DatabaseException     if the handler could not be generated.
+	 */
+	public Watcher<I> watch(I record, Duration interval, double jitter) throws DatabaseException {
+		return watch(record, interval, jitter, null);
+	}
+
+	/**
+	 * Watches the record for new rows as with
+	 * {@link #watch(DatabaseRecord, Duration, double)}, passing every failed poll
+	 * to the errors.
+	 *
+	 * @param errors Accepts the failure of every failed poll on the poller's
+	 *               thread, or null to only keep the last failure.
+	 */
+	public Watcher<I> watch(I record, Duration interval, double jitter, Consumer<? super Exception> errors)
+			throws DatabaseException {
+		if (!proxy.isAnnotationPresent(Watch.class)) {
+			throw new IllegalStateException(proxy + " is not watched.");
+		}
+		if (jitter < 0D || jitter > 1D) {
+			throw new IllegalArgumentException("jitter must be within [0, 1]: " + jitter);
+		}
+		int flags = record.flags();
+		var handler = handler(flags);
+		Watcher.Key key;
+		try {
+			key = new Watcher.Key(flags, handler.capture(record));
+		} catch (SQLException sql) {
+			throw new DatabaseException(sql, record, handler);
+		}
+		long nanos = interval.toNanos();
+		var executor = settings.executor;
+		for (;;) {
+			var watcher = watches.computeIfAbsent(key, k -> new Watcher.Poller<>(this, k, nanos, jitter, executor))
+					.subscribe(record, errors);
+			// Otherwise, the poller closed in the meantime and is being replaced.
+			if (watcher != null) {
+				return watcher;
+			}
+		}
+	}
+
+	/** Removes the poller once its last watcher has closed. */
+	void unwatch(Watcher.Key key, Watcher.Poller<I> poller) {
+		watches.remove(key, poller);
+	}
+
+	/**
+	 * Writes the flags of every handler within the cache along with how often it
+	 * has been used, for {@link #warmup(Path) warming up} the cache on the next
+	 * start.
+	 *
+	 * @param profile The file to write to, replaced atomically.
+	 * @throws IOException if the profile could not be written.
+	 */
+	public void saveProfile(Path profile) throws IOException {
+		var builder = new StringBuilder("# ").append(proxy).append('\n');
+		for (var entry : table) {
+			if (entry == null || entry.refersTo(null)) {
+				continue;
 			}
+			builder.append(entry.flags).append(' ').append(entry.hits).append('\n');
 		}
-		handler.query(i);
+		var temporary = profile.resolveSibling(profile.getFileName() + ".tmp");
+		Files.writeString(temporary, builder);
+		Files.move(temporary, profile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Generates and prepares the handlers listed within the profile on the cache's
+	 * executor, hottest first, before they're needed by
+	 * {@link #handle(DatabaseRecord)}.
+	 * <p>
+	 * The cache may be used while warming up, with any handler that has yet to be
+	 * generated being generated on demand as usual.
+	 *
+	 * @param profile The file written by {@link #saveProfile(Path)}. Nothing is
+	 *                warmed up if it doesn't exist.
+	 * @return Completes once every handler has been generated, or exceptionally
+	 *         with the first failure. Cancelling skips any handler yet to be
+	 *         generated.
+	 * @throws IOException if the profile exists but could not be read.
+	 */
+	public CompletableFuture<Void> warmup(Path profile) throws IOException {
+		if (Files.notExists(profile)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		var variants = new ArrayList<long[]>();
+		for (var line : Files.readAllLines(profile)) {
+			line = line.strip();
+			if (line.isEmpty() || line.charAt(0) == '#') {
+				continue;
+			}
+			int space = line.indexOf(' ');
+			try {
+				variants.add(space < 0 ? new long[] { Integer.parseInt(line), 0L }
+						: new long[] { Integer.parseInt(line.substring(0, space)),
+								Long.parseLong(line.substring(space + 1).strip()) });
+			} catch (NumberFormatException nfe) {
+				throw new IOException("Malformed line within " + profile + ": " + line, nfe);
+			}
+		}
+		var warm = new CompletableFuture<Void>();
+		if (variants.isEmpty()) {
+			warm.complete(null);
+			return warm;
+		}
+		variants.sort((a, b) -> Long.compare(b[1], a[1]));
+		var remaining = new AtomicInteger(variants.size());
+		for (var variant : variants) {
+			int flags = (int) variant[0];
+			settings.executor.execute(() -> {
+				try {
+					if (!warm.isDone() && !contains(flags)) {
+						admit(flags, surrogate(flags, polymorphic));
+					}
+				} catch (DatabaseException | RuntimeException e) {
+					warm.completeExceptionally(e);
+				} catch (Error e) {
+					// Such as a LinkageError while defining the handler.
+					warm.completeExceptionally(e);
+					throw e;
+				} finally {
+					if (remaining.decrementAndGet() == 0) {
+						warm.complete(null);
+					}
+				}
+			});
+		}
+		return warm;
+	}
+
+	private boolean contains(int flags) {
+		var table = this.table;
+		var entry = (HandlerEntry) TABLE.getAcquire(table, flags & (table.length - 1));
+		return entry != null && entry.flags == flags && !entry.refersTo(null);
 	}
 
 	private void cleanTable() {
@@ -132,211 +660,700 @@ public final class StatementCache<I extends DatabaseRecord<?>> { // I - Input |
 		while ((entry = (HandlerEntry) queue.poll()) != null) {
 			try {
 				entry.close();
-			} catch (DatabaseException e) {
-				e.printStackTrace();
 			} finally {
 				TABLE.compareAndSet(table, entry.flags & hash, entry, null);
+				entry.release();
 			}
 		}
 	}
 
-	private StatementHandler add(I i, int index) throws DatabaseException {
-		var handler = surrogate(i);
-		table[index] = new HandlerEntry(i.flags(), handler, queue);
-		return handler;
+	/**
+	 * Counts the handler against the budget before {@link #add(int,
+	 * StatementHandler, StatementBudget) adding} it, as making room may take the
+	 * lock of other caches.
+	 *
+	 * @return The handler within the table.
+	 */
+	private StatementHandler admit(int flags, StatementHandler handler) throws DatabaseException {
+		var budget = settings.budget;
+		if (budget != null) {
+			budget.reserveHandler();
+		}
+		return add(flags, handler, budget);
+	}
+
+	/**
+	 * Adds the handler to the table, unless another thread has already added one
+	 * for the flags, in which case that handler is used instead.
+	 *
+	 * @param budget The budget the handler has been counted against, released if
+	 *               the handler isn't added.
+	 * @return The handler within the table.
+	 */
+	private synchronized StatementHandler add(int flags, StatementHandler handler, StatementBudget budget)
+			throws DatabaseException {
+		boolean added = false;
+		try {
+			int hash = table.length - 1;
+			var entry = table[flags & hash];
+			if (entry != null && !entry.refersTo(null)) {
+				if (entry.flags == flags) {
+					var existing = entry.get();
+					if (existing != null) {
+						entry.hits++;
+						return existing;
+					}
+				} else {
+					hash = resize(flags);
+				}
+			}
+			entry = new HandlerEntry(flags, handler, queue);
+			entry.budget = budget;
+			TABLE.setRelease(table, flags & hash, entry);
+			added = true;
+			return handler;
+		} finally {
+			if (!added && budget != null) {
+				budget.releaseHandler();
+			}
+		}
+	}
+
+	/**
+	 * Generates the handler specific to the flags on the executor, replacing the
+	 * interim handler once ready.
+	 */
+	private void promote(int flags, StatementHandler interim) {
+		settings.executor.execute(() -> {
+			try {
+				swap(flags, interim, surrogate(flags, false));
+			} catch (DatabaseException | RuntimeException e) {
+				// The interim handler is equivalent, and as such, is kept as is.
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Replaces the handler of the flags, unless it has since been replaced or
+	 * collected. Statements of the replaced handler still in use are closed as
+	 * their queries complete.
+	 */
+	private synchronized void swap(int flags, StatementHandler from, StatementHandler to) throws DatabaseException {
+		var table = this.table;
+		int slot = flags & (table.length - 1);
+		var entry = table[slot];
+		if (entry == null || entry.flags != flags || !entry.refersTo(from)) {
+			return;
+		}
+		var promoted = new HandlerEntry(flags, to, queue);
+		promoted.hits = entry.hits;
+		promoted.budget = entry.budget;
+		TABLE.setRelease(table, slot, promoted);
+		entry.close();
+		// Counted by the promoted entry instead; cleared as to never be released.
+		entry.clear();
+	}
+
+	/**
+	 * Finds the coldest handler within the table for the budget.
+	 *
+	 * @param statements Whether the handler must have statements, otherwise, it
+	 *                   must be counted against the budget.
+	 * @param except     The pools of the handler to skip.
+	 * @return The coldest entry, or null if none qualify.
+	 */
+	HandlerEntry coldest(boolean statements, Object except) {
+		HandlerEntry coldest = null;
+		for (var entry : table) {
+			var handler = entry == null ? null : entry.get();
+			if (handler == null || entry.pools == except
+					|| (statements ? entry.pools.size() == 0 : entry.budget == null)) {
+				continue;
+			}
+			if (coldest == null || entry.hits < coldest.hits) {
+				coldest = entry;
+			}
+		}
+		return coldest;
+	}
+
+	/** Halves the hits of every handler, as to let formerly hot handlers cool. */
+	void age() {
+		for (var entry : table) {
+			if (entry != null) {
+				entry.hits >>>= 1;
+			}
+		}
+	}
+
+	/**
+	 * Removes the entry from the table for the budget, closing its statements. The
+	 * handler is generated again should its flags be seen again.
+	 */
+	synchronized void evict(HandlerEntry entry) {
+		var table = this.table;
+		if (!TABLE.compareAndSet(table, entry.flags & (table.length - 1), entry, null)) {
+			return;
+		}
+		try {
+			entry.close();
+		} finally {
+			// Cleared as to never be enqueued, having already been released here.
+			entry.clear();
+			entry.release();
+		}
 	}
 
 	private int resize(int flags) {
 		int hash;
+		HandlerEntry[] resized;
 		do {
 			var old = table;
 			int length = old.length << 1;
-			table = new HandlerEntry[length];
+			resized = new HandlerEntry[length];
 			hash = length - 1;
 			for (var e : old) {
 				if (e == null || e.refersTo(null)) {
 					continue;
 				}
-				table[e.flags & hash] = e;
+				resized[e.flags & hash] = e;
 			}
-		} while (table[flags & hash] != null);
+			// Only published once filled, as readers don't take the lock.
+			table = resized;
+		} while (resized[flags & hash] != null);
 		return hash;
 	}
 
-	private StatementHandler surrogate(I i) throws DatabaseException {
-		var writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+	private StatementHandler surrogate(int flags, boolean polymorphic) throws DatabaseException {
+		var shared = polymorphic ? this.shared : null;
+		var classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+		// The shared class has already been written; only the variant is needed.
+		var writer = shared != null ? DISCARD : classWriter;
 		var handlerType = Type.getType(StatementHandler.class);
 		var iType = Type.getType(iClass);
 		var iDesc = Type.getDescriptor(iClass);
 		var iName = Type.getInternalName(iClass);
 		var provider = Type.getType(SqlConnectionProvider.class);
+		var settingsType = Type.getType(Settings.class);
+		var variantType = Type.getType(Variant.class);
 		var statementHandler = handlerType.getInternalName();
-		var self = "net/kjp12/hachimitsu/database/api/StatementHandler$" + i.getClass().getSimpleName() + '$'
-				+ i.flags();
+		var self = "net/kjp12/hachimitsu/database/api/StatementHandler$" + iClass.getSimpleName() + '$'
+				+ (polymorphic ? "shared" : String.valueOf(flags));
 		var sqlQuery = new StringBuilder();
+		var variant = new Variant(flags);
+		var dialect = dialect();
 		byte[] array;
 
 		Table[] tables = proxy.getAnnotationsByType(Table.class);
 		Arrays.sort(tables, Comparator.comparingInt(Table::table));
+		Pagination pagination = proxy.getAnnotation(Pagination.class);
+		Split split = proxy.getAnnotation(Split.class);
+		GroupBy groupBy = proxy.getAnnotation(GroupBy.class);
+		Watch watch = proxy.getAnnotation(Watch.class);
+		List<Query> queries = activeQueries(flags);
+		// Columns of parameters that aren't aggregated, to group by once any are.
+		var grouping = new ArrayList<String>();
+		boolean aggregated = false;
+		// Tables referenced by the variant, the primary table always being present.
+		var referenced = new BitSet();
+		referenced.set(0);
 
 		writer.visit(Opcodes.V11, Opcodes.ACC_SYNTHETIC | Opcodes.ACC_FINAL, self, null, statementHandler, null);
 
-		{ // Query function, overrides the interface.
-			var qDesc = Type.getMethodDescriptor(Type.VOID_TYPE, iType);
-			var synth = writer.visitMethod(Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE, "query",
-					Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object.class)), null, null);
-			synth.visitVarInsn(Opcodes.ALOAD, 0);
-			synth.visitVarInsn(Opcodes.ALOAD, 1);
-			synth.visitTypeInsn(Opcodes.CHECKCAST, iName);
-			synth.visitMethodInsn(Opcodes.INVOKEVIRTUAL, self, "query", qDesc, false);
-			synth.visitInsn(Opcodes.RETURN);
-			synth.visitMaxs(0, 0);
-			synth.visitEnd();
+		var shape = proxy.isAnnotationPresent(Shape.class) ? proxy.getAnnotation(Shape.class).value() : Shape.Kind.LIST;
+		var aggregate = shape == Shape.Kind.COUNT || shape == Shape.Kind.EXISTS;
+		variant.shape = shape;
+		if (groupBy != null || Arrays.stream(proxy.getParameterAnnotations()).flatMap(Arrays::stream)
+				.anyMatch(Aggregate.class::isInstance)) {
+			if (aggregate) {
+				throw new IllegalArgumentException(proxy + " cannot be aggregated with an aggregate shape: " + shape);
+			}
+			if (split != null) {
+				throw new IllegalArgumentException(proxy + " cannot be aggregated while split: " + split);
+			}
+			if (watch != null) {
+				throw new IllegalArgumentException(proxy + " cannot be aggregated while watched: " + watch);
+			}
+		}
+		if (watch != null) {
+			if (shape != Shape.Kind.LIST) {
+				throw new IllegalArgumentException(proxy + " can only be watched as a list: " + shape);
+			}
+			if (split != null) {
+				throw new IllegalArgumentException(proxy + " cannot be split while watched: " + split);
+			}
+			if (pagination != null && (pagination.sort().value().length != 0 || !pagination.offset().isBlank())) {
+				throw new IllegalArgumentException(proxy + " cannot be sorted nor offset while watched: " + pagination);
+			}
+		}
+		var mDesc = Type.getMethodDescriptor(OBJECT_TYPE, Type.getType(ResultSet.class));
 
-			var query = writer.visitMethod(Opcodes.ACC_FINAL, "query", qDesc, null, null);
+		int from;
+		boolean ran = false;
+		{ // Map function, maps the current row.
+			var map = writer.visitMethod(Opcodes.ACC_PROTECTED | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, "map",
+					mDesc, null, null);
 
-			// Execute the query then store at 2, replacing the statement.
-			query.visitVarInsn(Opcodes.ALOAD, 0);
-			query.visitVarInsn(Opcodes.ALOAD, 1);
-			query.visitMethodInsn(Opcodes.INVOKEVIRTUAL, self, "submit", '(' + iDesc + ')' + RESULT_SET_DESCRIPTOR,
-					false);
-			query.visitVarInsn(Opcodes.ASTORE, 2);
-
-			// Create an array list then store at 3. Generics not required.
-			query.visitTypeInsn(Opcodes.NEW, "java/util/ArrayList");
-			query.visitInsn(Opcodes.DUP);
-			query.visitVarInsn(Opcodes.ALOAD, 2);
-			query.visitMethodInsn(Opcodes.INVOKEINTERFACE, RESULT_SET_TYPE, "getFetchSize", "()I", true);
-			query.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/util/ArrayList", "<init>", "(I)V", false);
-			query.visitVarInsn(Opcodes.ASTORE, 3);
-
-			// Setup loop
-			Label loop = new Label(), end = new Label();
-			query.visitLabel(loop);
-			query.visitFrame(Opcodes.F_SAME, 0, new Object[0], 0, new Object[0]);
-			query.visitVarInsn(Opcodes.ALOAD, 2);
-			query.visitMethodInsn(Opcodes.INVOKEINTERFACE, RESULT_SET_TYPE, "next", "()Z", true);
-			query.visitJumpInsn(Opcodes.IFEQ, end);
-
-			// Loop
-			query.visitVarInsn(Opcodes.ALOAD, 3);
-
-			{ // Writes the selections from the tables.
+			if (shape == Shape.Kind.COUNT) {
+				sqlQuery.append("select count(*)");
+				map.visitVarInsn(Opcodes.ALOAD, 1);
+				map.visitInsn(Opcodes.ICONST_1);
+				map.visitMethodInsn(Opcodes.INVOKEINTERFACE, RESULT_SET_TYPE, "getLong", "(I)J", true);
+				map.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;", false);
+				variant.columns = new ClassMap[] { ClassMap.LONG };
+			} else if (shape == Shape.Kind.EXISTS) {
+				sqlQuery.append("select exists(select 1");
+				map.visitVarInsn(Opcodes.ALOAD, 1);
+				map.visitInsn(Opcodes.ICONST_1);
+				map.visitMethodInsn(Opcodes.INVOKEINTERFACE, RESULT_SET_TYPE, "getBoolean", "(I)Z", true);
+				map.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;",
+						false);
+				variant.columns = new ClassMap[] { ClassMap.BOOLEAN };
+			} else { // Writes the selections from the tables.
 				sqlQuery.append("select ");
 				var annots = proxy.getParameterAnnotations();
 				var params = proxy.getParameterTypes();
+				// Pipelined mapping reads the row into the array at 2, to be built from the
+				// array at 1 on another thread.
+				var read = writer.visitMethod(Opcodes.ACC_PROTECTED | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, "read",
+						"(Ljava/sql/ResultSet;[Ljava/lang/Object;)V", null, null);
+				var build = writer.visitMethod(Opcodes.ACC_PROTECTED | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC,
+						"build", "([Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+				variant.arity = params.length;
+				// The shared class reads the column index from 2 and the flags from 3, as the
+				// selected columns vary by flags, or from 3 and 4 when reading into the array.
+				boolean counting = polymorphic && Arrays.stream(annots).flatMap(Arrays::stream)
+						.anyMatch(b -> b instanceof Value v && v.mask() != 0);
+				if (counting) {
+					map.visitInsn(Opcodes.ICONST_0);
+					map.visitVarInsn(Opcodes.ISTORE, 2);
+					map.visitVarInsn(Opcodes.ALOAD, 0);
+					map.visitMethodInsn(Opcodes.INVOKEVIRTUAL, statementHandler, "flags", "()I", false);
+					map.visitVarInsn(Opcodes.ISTORE, 3);
+					read.visitInsn(Opcodes.ICONST_0);
+					read.visitVarInsn(Opcodes.ISTORE, 3);
+					read.visitVarInsn(Opcodes.ALOAD, 0);
+					read.visitMethodInsn(Opcodes.INVOKEVIRTUAL, statementHandler, "flags", "()I", false);
+					read.visitVarInsn(Opcodes.ISTORE, 4);
+				}
+				int selected = 0;
+				var columns = new ArrayList<ClassMap>();
 				for (int a = 0, l = params.length; a < l; a++) {
 					Value value = null;
+					Aggregate function = null;
 					for (var b : annots[a]) {
 						if (b instanceof Value v) {
 							value = v;
-							break;
+						} else if (b instanceof Aggregate g) {
+							function = g;
 						}
 					}
 					if (value == null) {
 						throw new IllegalArgumentException(proxy + " does not contain Value annotation on parameter "
-								+ i + ": param: " + params[a] + ", annotations: " + Arrays.toString(annots[a]));
-					}
-
-					appendQuery(sqlQuery, value.table(), value.value());
-
-					query.visitVarInsn(Opcodes.ALOAD, 2);
-					int stack = a + 1;
-					if (stack <= 5) {
-						// Use the single-instruction opcodes where applicable.
-						query.visitInsn(Opcodes.ICONST_0 + stack);
-					} else {
-						query.visitIntInsn(Opcodes.BIPUSH, stack);
+								+ a + ": param: " + params[a] + ", annotations: " + Arrays.toString(annots[a]));
 					}
 
 					var clazz = params[a];
 					var mapper = ClassMap.findMapper(clazz);
-					if (mapper.passClass) {
-						var type = Type.getType(clazz);
-						query.visitLdcInsn(type);
-						query.visitMethodInsn(Opcodes.INVOKEINTERFACE, RESULT_SET_TYPE, mapper.getter,
-								"(ILjava/lang/Class;)Ljava/lang/Object;", true);
-						query.visitTypeInsn(Opcodes.CHECKCAST, type.getInternalName());
-					} else {
-						query.visitMethodInsn(Opcodes.INVOKEINTERFACE, RESULT_SET_TYPE, mapper.getter,
-								"(I)" + mapper.internal.descriptorString(), true);
+					if (value.intern() && clazz != String.class) {
+						throw new IllegalArgumentException(proxy + " can only intern strings: parameter " + a + " is "
+								+ clazz);
+					}
+					boolean active = (flags & value.mask()) == (value.maskRq() == -1 ? value.mask() : value.maskRq());
+					if (active) {
+						int column = sqlQuery.length();
+						appendQuery(sqlQuery, value.table(), value.value());
+						referenced.set(value.table());
+						if (function != null) {
+							aggregated = true;
+							sqlQuery.insert(column, function.value().name().toLowerCase(Locale.ROOT)
+									+ (function.distinct() ? "(distinct " : "("));
+							sqlQuery.insert(sqlQuery.length() - 1, ')');
+						} else {
+							grouping.add(sqlQuery.substring(column, sqlQuery.length() - 1));
+						}
+						columns.add(mapper);
+						selected++;
 					}
+
+					column(map, statementHandler, value, mapper, clazz, active, counting, selected, 2);
+
+					read.visitVarInsn(Opcodes.ALOAD, 2);
+					C0.pushInt(read, a);
+					column(read, statementHandler, value, mapper, clazz, active, counting, selected, 3);
+					mapper.box(read);
+					read.visitInsn(Opcodes.AASTORE);
+
+					build.visitVarInsn(Opcodes.ALOAD, 1);
+					C0.pushInt(build, a);
+					build.visitInsn(Opcodes.AALOAD);
+					mapper.unbox(build, clazz);
+				}
+				if (selected == 0) {
+					// Nothing but the defaults were requested, yet a column is required.
+					sqlQuery.append("1,");
+					columns.add(ClassMap.INT);
+					selected = 1;
+				}
+				variant.columns = columns.toArray(ClassMap[]::new);
+				if (watch != null) {
+					// Selected last for the handler to take the mark from.
+					appendQuery(sqlQuery, watch.value().table(), watch.value().value());
+					variant.watch = selected + 1;
 				}
 				sqlQuery.setLength(sqlQuery.length() - 1);
+
+				var owner = Type.getInternalName(proxy.getDeclaringClass());
+				var descriptor = Type.getMethodDescriptor(proxy);
+				map.visitMethodInsn(Opcodes.INVOKESTATIC, owner, proxy.getName(), descriptor, false);
+
+				read.visitInsn(Opcodes.RETURN);
+				read.visitMaxs(0, 0);
+				read.visitEnd();
+
+				build.visitMethodInsn(Opcodes.INVOKESTATIC, owner, proxy.getName(), descriptor, false);
+				build.visitInsn(Opcodes.ARETURN);
+				build.visitMaxs(0, 0);
+				build.visitEnd();
+			}
+			map.visitInsn(Opcodes.ARETURN);
+			map.visitMaxs(0, 0);
+			map.visitEnd();
+			if (shape == Shape.Kind.COUNT || shape == Shape.Kind.EXISTS) {
+				// Never pipelined, yet still generated as to be complete; the row is mapped
+				// whole into the first element.
+				var read = writer.visitMethod(Opcodes.ACC_PROTECTED | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, "read",
+						"(Ljava/sql/ResultSet;[Ljava/lang/Object;)V", null, null);
+				read.visitVarInsn(Opcodes.ALOAD, 2);
+				read.visitInsn(Opcodes.ICONST_0);
+				read.visitVarInsn(Opcodes.ALOAD, 0);
+				read.visitVarInsn(Opcodes.ALOAD, 1);
+				read.visitMethodInsn(Opcodes.INVOKEVIRTUAL, statementHandler, "map", mDesc, false);
+				read.visitInsn(Opcodes.AASTORE);
+				read.visitInsn(Opcodes.RETURN);
+				read.visitMaxs(0, 0);
+				read.visitEnd();
+				var build = writer.visitMethod(Opcodes.ACC_PROTECTED | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC,
+						"build", "([Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+				build.visitVarInsn(Opcodes.ALOAD, 1);
+				build.visitInsn(Opcodes.ICONST_0);
+				build.visitInsn(Opcodes.AALOAD);
+				build.visitInsn(Opcodes.ARETURN);
+				build.visitMaxs(0, 0);
+				build.visitEnd();
 			}
 
 			{ // Writes the from tables
+				if (pagination != null && !aggregate) {
+					referenced.set(pagination.sort().table());
+				}
+				if (split != null) {
+					referenced.set(split.value().table());
+				}
+				if (watch != null) {
+					referenced.set(watch.value().table());
+				}
+				if (groupBy != null) {
+					for (var value : groupBy.value()) {
+						referenced.set(value.table());
+					}
+				}
+				for (var q : queries) {
+					references(referenced, q.query());
+				}
+				joins(tables, referenced);
+
+				// Written separately as hints may prefix the statement.
+				var clause = new StringBuilder();
+				var filters = new StringBuilder();
 				for (Table table : tables) {
 					if (table.table() == 0) {
-						sqlQuery.append(" from ").append(table.value()).append(' ');
-					} else {
-						var match = table.match();
-						char assigned = (char) ('`' + table.table());
-						sqlQuery.append("left outer join ").append(table.value()).append(' ').append(assigned)
-								.append(" on(").append(match.primary()).append('=').append(assigned).append('.')
-								.append(match.secondary()).append(')');
+						clause.append(" from ").append(table.value());
+						if (!table.index().isEmpty()) {
+							dialect.index(sqlQuery, clause, table.value(), table.index());
+						}
+						clause.append(' ');
+						continue;
+					}
+					if (!referenced.get(table.table())) {
+						// Only unique left joins go unreferenced, never omitting nor adding rows.
+						continue;
 					}
+					var match = table.match();
+					char assigned = (char) ('`' + table.table());
+					switch (table.join()) {
+						case LEFT, LEFT_UNIQUE, INNER -> {
+							clause.append(table.join() == Table.Join.INNER ? "inner join " : "left outer join ")
+									.append(table.value()).append(' ').append(assigned);
+							if (!table.index().isEmpty()) {
+								dialect.index(sqlQuery, clause, String.valueOf(assigned), table.index());
+							}
+							clause.append(" on(").append(match.primary()).append('=').append(assigned).append('.')
+									.append(match.secondary()).append(')');
+						}
+						case SEMI -> filters.append(match.primary()).append(" in (select ").append(match.secondary())
+								.append(" from ").append(table.value()).append(") and ");
+						case EXISTS -> filters.append("exists(select 1 from ").append(table.value()).append(' ')
+								.append(assigned).append(" where ").append(match.primary()).append('=').append(assigned)
+								.append('.').append(match.secondary()).append(") and ");
+					}
+				}
+				from = sqlQuery.length();
+				sqlQuery.append(clause);
+				if (!filters.isEmpty()) {
+					// Semi-joins are filters, and as such, start off the where clause.
+					ran = true;
+					filters.setLength(filters.length() - 5);
+					sqlQuery.append("where ").append(filters);
 				}
 			}
+		}
+		{ // Collect function, overrides the handler.
+			var collect = writer.visitMethod(Opcodes.ACC_PROTECTED | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC,
+					"collect", mDesc, null, null);
+
+			if (shape == Shape.Kind.LIST) {
+				// Create an array list then store at 2. Generics not required.
+				collect.visitTypeInsn(Opcodes.NEW, "java/util/ArrayList");
+				collect.visitInsn(Opcodes.DUP);
+				collect.visitVarInsn(Opcodes.ALOAD, 1);
+				collect.visitMethodInsn(Opcodes.INVOKEINTERFACE, RESULT_SET_TYPE, "getFetchSize", "()I", true);
+				// Streaming drivers may report a negative fetch size.
+				collect.visitInsn(Opcodes.ICONST_0);
+				collect.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "max", "(II)I", false);
+				collect.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/util/ArrayList", "<init>", "(I)V", false);
+				collect.visitVarInsn(Opcodes.ASTORE, 2);
+
+				// Setup loop
+				Label loop = new Label(), end = new Label();
+				collect.visitLabel(loop);
+				collect.visitFrame(Opcodes.F_SAME, 0, new Object[0], 0, new Object[0]);
+				collect.visitVarInsn(Opcodes.ALOAD, 1);
+				collect.visitMethodInsn(Opcodes.INVOKEINTERFACE, RESULT_SET_TYPE, "next", "()Z", true);
+				collect.visitJumpInsn(Opcodes.IFEQ, end);
 
-			query.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(proxy.getDeclaringClass()),
-					proxy.getName(), Type.getMethodDescriptor(proxy), false);
-			query.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/util/ArrayList", "add", "(Ljava/lang/Object;)Z", false);
-			query.visitInsn(Opcodes.POP);
-			query.visitJumpInsn(Opcodes.GOTO, loop);
+				// Loop
+				collect.visitVarInsn(Opcodes.ALOAD, 2);
+				collect.visitVarInsn(Opcodes.ALOAD, 0);
+				collect.visitVarInsn(Opcodes.ALOAD, 1);
+				collect.visitMethodInsn(Opcodes.INVOKEVIRTUAL, self, "map", mDesc, false);
+				collect.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/util/ArrayList", "add", "(Ljava/lang/Object;)Z",
+						false);
+				collect.visitInsn(Opcodes.POP);
+				collect.visitJumpInsn(Opcodes.GOTO, loop);
 
-			// End loop & method, completes
-			query.visitLabel(end);
-			query.visitFrame(Opcodes.F_SAME, 0, new Object[0], 0, new Object[0]);
-			query.visitVarInsn(Opcodes.ALOAD, 1);
-			query.visitVarInsn(Opcodes.ALOAD, 3);
-			query.visitMethodInsn(Opcodes.INVOKEVIRTUAL, iName, "complete", "(Ljava/lang/Object;)V", false);
-			query.visitInsn(Opcodes.RETURN);
-			query.visitMaxs(0, 0);
-			query.visitEnd();
+				// End loop & method, returns the list
+				collect.visitLabel(end);
+				collect.visitFrame(Opcodes.F_SAME, 0, new Object[0], 0, new Object[0]);
+				collect.visitVarInsn(Opcodes.ALOAD, 2);
+			} else {
+				// Only the first row is ever looked at.
+				Label empty = new Label();
+				collect.visitVarInsn(Opcodes.ALOAD, 1);
+				collect.visitMethodInsn(Opcodes.INVOKEINTERFACE, RESULT_SET_TYPE, "next", "()Z", true);
+				collect.visitJumpInsn(Opcodes.IFEQ, empty);
+				collect.visitVarInsn(Opcodes.ALOAD, 0);
+				collect.visitVarInsn(Opcodes.ALOAD, 1);
+				collect.visitMethodInsn(Opcodes.INVOKEVIRTUAL, self, "map", mDesc, false);
+				if (shape == Shape.Kind.OPTIONAL) {
+					collect.visitMethodInsn(Opcodes.INVOKESTATIC, "java/util/Optional", "ofNullable",
+							"(Ljava/lang/Object;)Ljava/util/Optional;", false);
+				}
+				collect.visitInsn(Opcodes.ARETURN);
+
+				collect.visitLabel(empty);
+				collect.visitFrame(Opcodes.F_SAME, 0, new Object[0], 0, new Object[0]);
+				switch (shape) {
+					case OPTIONAL -> collect.visitMethodInsn(Opcodes.INVOKESTATIC, "java/util/Optional", "empty",
+							"()Ljava/util/Optional;", false);
+					case COUNT -> {
+						collect.visitInsn(Opcodes.LCONST_0);
+						collect.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Long", "valueOf",
+								"(J)Ljava/lang/Long;", false);
+					}
+					case EXISTS -> collect.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/Boolean", "FALSE",
+							"Ljava/lang/Boolean;");
+					default -> collect.visitInsn(Opcodes.ACONST_NULL);
+				}
+			}
+			collect.visitInsn(Opcodes.ARETURN);
+			collect.visitMaxs(0, 0);
+			collect.visitEnd();
 		}
-		{ // internal helper 'submit'
-			var submit = writer.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "submit",
-					Type.getMethodDescriptor(Type.getType(ResultSet.class), iType), null, null);
-			submit.visitVarInsn(Opcodes.ALOAD, 0);
-			submit.visitFieldInsn(Opcodes.GETFIELD, self, "statement", STATEMENT_DESCRIPTOR);
-			submit.visitVarInsn(Opcodes.ASTORE, 2);
+		{ // Bind function, overrides the handler.
+			var bDesc = Type.getMethodDescriptor(Type.VOID_TYPE, iType, Type.getType(PreparedStatement.class));
+			var synth = writer.visitMethod(Opcodes.ACC_PROTECTED | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC
+					| Opcodes.ACC_BRIDGE, "bind", "(Ljava/lang/Object;" + STATEMENT_DESCRIPTOR + ")V", null, null);
+			synth.visitVarInsn(Opcodes.ALOAD, 0);
+			synth.visitVarInsn(Opcodes.ALOAD, 1);
+			synth.visitTypeInsn(Opcodes.CHECKCAST, iName);
+			synth.visitVarInsn(Opcodes.ALOAD, 2);
+			synth.visitMethodInsn(Opcodes.INVOKEVIRTUAL, self, "bind", bDesc, false);
+			synth.visitInsn(Opcodes.RETURN);
+			synth.visitMaxs(0, 0);
+			synth.visitEnd();
+
+			// The statement is passed in at 2, allowing the same binding to be used across
+			// multiple statements.
+			var bind = writer.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "bind", bDesc, null, null);
+
+			int index = 0;
+			if (split != null) {
+				if (split.partitions() < 1) {
+					throw new IllegalArgumentException(proxy + " requires at least one partition: " + split);
+				}
+				if (!aggregate && pagination != null
+						&& !(pagination.limit().isBlank() && pagination.offset().isBlank())) {
+					throw new IllegalArgumentException(proxy + " cannot be split while paginated: " + pagination);
+				}
+				if (shape == Shape.Kind.SINGLE || shape == Shape.Kind.OPTIONAL) {
+					throw new IllegalArgumentException(proxy + " cannot be split with a single row shape: " + shape);
+				}
+				// Partitions would otherwise share, and be serialised by, a single connection.
+				if (!(sqlImpl instanceof ConnectionPool)) {
+					throw new IllegalArgumentException(proxy + " can only be split over a ConnectionPool: " + sqlImpl);
+				}
+				var splitValue = split.value();
+				// Partitions are only sorted within themselves, being combined in range order.
+				if (pagination != null && !aggregate && pagination.sort().value().length != 0
+						&& (pagination.sort().table() != splitValue.table()
+								|| !Arrays.equals(pagination.sort().value(), splitValue.value()))) {
+					throw new IllegalArgumentException(
+							proxy + " can only be sorted by the split column while split: " + pagination);
+				}
+				var column = new StringBuilder();
+				appendQuery(column, splitValue.table(), splitValue.value());
+				column.setLength(column.length() - 1);
+
+				// Bound by the handler at 1 and 2 on execution.
+				index = 2;
+				// Completed once the filters are appended, as to only bound the matching rows.
+				variant.bounds = "select min(" + column + "),max(" + column + ')';
+				variant.from = from;
+				sqlQuery.append(ran ? " and " : "where ").append(column).append(">=? and ").append(column)
+						.append("<=?");
+				ran = true;
+				variant.partitions = split.partitions();
+				// Sorting is descending, as such, the partitions are combined from the last.
+				variant.reverse = pagination != null && !aggregate && pagination.sort().value().length != 0;
+			} else if (watch != null) {
+				var column = new StringBuilder();
+				appendQuery(column, watch.value().table(), watch.value().value());
+				column.setLength(column.length() - 1);
+
+				// Bound by the handler at 1 on execution.
+				index = 1;
+				sqlQuery.append(ran ? " and " : "where ").append(column).append(">?");
+				ran = true;
+			}
 
 			// JVM is a stack machine; only the amount of params necessary will be taken
 			// from the stack.
 			// Writes the query. This also writes the query instructions.
-			C0 c0 = new C0(iClass, sqlImpl.getClass());
+			C0 c0 = new C0(iClass, sqlImpl.getClass(), index, dialect.arrays());
+			c0.memoize(method -> memos.computeIfAbsent(method, m -> new Memo()));
+			if (polymorphic) {
+				c0.branching(bind);
+			}
+			var expansions = new ArrayList<int[]>();
+			// Whether every expansion is the list of an in, rather than a not in.
+			boolean included = true;
 			{
-				Query[] classQueries = proxy.getDeclaringClass().getAnnotationsByType(Query.class),
-						proxyQueries = proxy.getAnnotationsByType(Query.class),
-						totalQueries = new Query[classQueries.length + proxyQueries.length];
-				System.arraycopy(classQueries, 0, totalQueries, 0, classQueries.length);
-				System.arraycopy(proxyQueries, 0, totalQueries, classQueries.length, proxyQueries.length);
-				boolean ran = false;
-				for (var q : totalQueries) {
-					var check = i.flags() & q.mask();
-					if (check != (q.maskRq() == -1 ? q.mask() : q.maskRq())) {
-						continue;
+				// When polymorphic, every query is compiled, only being bound when active.
+				for (var q : polymorphic ? queries() : queries) {
+					boolean active = !polymorphic || queries.contains(q);
+					Label skip = null;
+					if (polymorphic) {
+						c0.branch(bind, q, skip = new Label());
 					}
-					if (!ran) {
-						ran = true;
-						sqlQuery.append("where ");
-					} else {
-						sqlQuery.append(" and ");
+					int placeholder = sqlQuery.length();
+					if (active) {
+						if (!ran) {
+							ran = true;
+							sqlQuery.append("where ");
+						} else {
+							sqlQuery.append(" and ");
+						}
+						placeholder = sqlQuery.length();
+						sqlQuery.append(q.query());
+						if (q.timeout() > 0L && (variant.timeout == 0L || q.timeout() < variant.timeout)) {
+							variant.timeout = q.timeout();
+						}
 					}
-					sqlQuery.append(q.query());
 
 					for (var v : q.values()) {
+						Class<?> type;
 						try {
-							c0.compile(submit, v);
+							type = c0.compile(bind, v);
 						} catch (Throwable roe) {
-							throw new DatabaseException(roe, v, q, c0, i, sqlQuery, sqlImpl);
+							throw new DatabaseException(roe, v, q, c0, flags, sqlQuery, sqlImpl);
+						}
+						if (!active) {
+							continue;
+						}
+						index++;
+						int marker = sqlQuery.indexOf("?", placeholder);
+						if (marker < 0) {
+							placeholder = sqlQuery.length();
+							continue;
 						}
+						placeholder = marker + 1;
+						if (!Parameters.isCollection(type)) {
+							continue;
+						}
+						if (dialect.arrays()) {
+							placeholder = any(sqlQuery, marker);
+						} else {
+							expansions.add(new int[] { index, marker });
+							included &= included(sqlQuery, marker);
+						}
+					}
+					if (skip != null) {
+						c0.merge(bind, skip);
 					}
 				}
 			}
-			{
-				Pagination pagination = proxy.getAnnotation(Pagination.class);
+			int filtered = sqlQuery.length();
+			if (aggregated || groupBy != null) {
+				if (groupBy != null) {
+					for (var value : groupBy.value()) {
+						var column = new StringBuilder();
+						appendQuery(column, value.table(), value.value());
+						grouping.add(column.substring(0, column.length() - 1));
+					}
+				}
+				// Only aggregates reduce everything into a single row.
+				if (!grouping.isEmpty()) {
+					sqlQuery.append(" group by ").append(String.join(",", grouping));
+				}
+				if (groupBy != null && !groupBy.having().isBlank()) {
+					sqlQuery.append(" having ").append(groupBy.having());
+					for (var v : groupBy.values()) {
+						try {
+							c0.compile(bind, v);
+						} catch (Throwable roe) {
+							throw new DatabaseException(roe, v, groupBy, c0, flags, sqlQuery, sqlImpl);
+						}
+						index++;
+					}
+				}
+			}
+			if (!expansions.isEmpty()) {
+				variant.expansions = expansions.stream().mapToInt(e -> e[0]).toArray();
+				variant.markers = expansions.stream().mapToInt(e -> e[1]).toArray();
+				variant.chunked = included && shape == Shape.Kind.LIST && !aggregated && groupBy == null
+						&& pagination == null && split == null && watch == null;
+			}
+			if (shape == Shape.Kind.EXISTS) {
+				sqlQuery.append(')');
+			}
+			if (watch != null) {
+				// Ascending, as the mark is taken from the last row.
+				appendQuery(sqlQuery.append(" order by "), watch.value().table(), watch.value().value());
+				sqlQuery.setLength(sqlQuery.length() - 1);
+			}
+			if (pagination != null && !aggregate) {
 				var sort = pagination.sort();
 				var sortValue = sort.value();
 				if (sortValue.length != 0) {
@@ -345,47 +1362,59 @@ public final class StatementCache<I extends DatabaseRecord<?>> { // I - Input |
 					sqlQuery.replace(l - 1, l, " desc");
 				}
 				var limit = pagination.limit();
+				var offset = pagination.offset();
+				dialect.paginate(sqlQuery, !limit.isBlank(), !offset.isBlank());
 				if (!limit.isBlank()) {
-					sqlQuery.append(" limit ?");
 					try {
-						c0.compile(submit, limit);
+						c0.compile(bind, limit);
 					} catch (Throwable roe) {
 						throw new DatabaseException(roe, limit, pagination, sqlQuery, sqlImpl);
 					}
 				}
-				var offset = pagination.offset();
 				if (!offset.isBlank()) {
-					sqlQuery.append(" offset ?");
 					try {
-						c0.compile(submit, offset);
+						c0.compile(bind, offset);
 					} catch (Throwable roe) {
 						throw new DatabaseException(roe, offset, pagination, sqlQuery, sqlImpl);
 					}
 				}
 			}
 
-			submit.visitVarInsn(Opcodes.ALOAD, 2);
-			submit.visitMethodInsn(Opcodes.INVOKEINTERFACE, STATEMENT_TYPE, "executeQuery",
-					"()" + RESULT_SET_DESCRIPTOR, true);
-			submit.visitInsn(Opcodes.ARETURN);
-			submit.visitMaxs(0, 0);
-			submit.visitEnd();
+			if (split != null) {
+				// Neither sorted nor paginated, as the bounds are a single aggregate row.
+				variant.tail = sqlQuery.length() - filtered;
+				variant.bounds += sqlQuery.substring(from, filtered);
+			}
+
+			bind.visitInsn(Opcodes.RETURN);
+			bind.visitMaxs(0, 0);
+			bind.visitEnd();
+			variant.memos = c0.memos();
 		}
 		{ // constructor
-			var init = writer.visitMethod(0, "<init>", Type.getMethodDescriptor(Type.VOID_TYPE, provider), null, null);
+			var cDesc = Type.getMethodDescriptor(Type.VOID_TYPE, provider, settingsType, variantType);
+			var init = writer.visitMethod(0, "<init>", cDesc, null, null);
 			init.visitVarInsn(Opcodes.ALOAD, 0);
 			init.visitVarInsn(Opcodes.ALOAD, 1);
-			init.visitLdcInsn(sqlQuery.toString());
+			init.visitVarInsn(Opcodes.ALOAD, 2);
+			init.visitVarInsn(Opcodes.ALOAD, 3);
 			// Cache type has to be passed else it is impossible to initialise the class
 			// otherwise.
-			init.visitMethodInsn(Opcodes.INVOKESPECIAL, statementHandler, "<init>",
-					Type.getMethodDescriptor(Type.VOID_TYPE, provider, STRING_TYPE), false);
+			init.visitMethodInsn(Opcodes.INVOKESPECIAL, statementHandler, "<init>", cDesc, false);
 			init.visitInsn(Opcodes.RETURN);
-			init.visitMaxs(3, 1);
+			init.visitMaxs(4, 4);
 			init.visitEnd();
 		}
+		variant.sql = sqlQuery.toString();
+		if (shared != null) {
+			try {
+				return (StatementHandler) shared.invoke(sqlImpl, settings, variant);
+			} catch (Throwable throwable) {
+				throw new DatabaseException(throwable, flags, sqlQuery);
+			}
+		}
 		writer.visitEnd();
-		array = writer.toByteArray();
+		array = classWriter.toByteArray();
 		try {
 			// Allow for trivial debugging and decompilation of the handler if it severely
 			// broke.
@@ -401,8 +1430,11 @@ public final class StatementCache<I extends DatabaseRecord<?>> { // I - Input |
 			SELF.ensureInitialized(StatementHandler.class);
 			var nest = SELF.defineHiddenClass(array, true);
 			var cons = nest.findConstructor(nest.lookupClass(),
-					MethodType.methodType(void.class, SqlConnectionProvider.class));
-			return (StatementHandler) cons.invoke(sqlImpl);
+					MethodType.methodType(void.class, SqlConnectionProvider.class, Settings.class, Variant.class));
+			if (polymorphic) {
+				this.shared = cons;
+			}
+			return (StatementHandler) cons.invoke(sqlImpl, settings, variant);
 		} catch (VirtualMachineError | LinkageError | IllegalAccessException | IllegalArgumentException
 				| NoSuchMethodException | SecurityException | InstantiationException | InvocationTargetException
 				| NullPointerException | SQLException | DatabaseException roe) {
@@ -412,7 +1444,7 @@ public final class StatementCache<I extends DatabaseRecord<?>> { // I - Input |
 			} catch (Exception e) {
 				suppressed = e;
 			}
-			var pe = new DatabaseException(roe, i, sqlQuery, "Bytecode has been dumped at scasm.class.");
+			var pe = new DatabaseException(roe, flags, sqlQuery, "Bytecode has been dumped at scasm.class.");
 			if (suppressed != null) {
 				pe.addSuppressed(suppressed);
 			}
@@ -425,50 +1457,276 @@ public final class StatementCache<I extends DatabaseRecord<?>> { // I - Input |
 		}
 	}
 
-	private static void appendQuery(StringBuilder sqlQuery, int table, String[] nameStack) {
+	/**
+	 * Gets the provider's dialect. Queried once, as the database is not expected
+	 * to change.
+	 */
+	private Dialect dialect() {
+		var dialect = this.dialect;
+		if (dialect == null) {
+			settings.dialect = this.dialect = dialect = sqlImpl.dialect();
+		}
+		return dialect;
+	}
+
+	/**
+	 * Rewrites <code>in (?)</code> into <code>= any(?)</code>, and
+	 * <code>not in (?)</code> into <code>&lt;&gt; all(?)</code>, to match against
+	 * the array bound at the placeholder. Left as is when the placeholder is used
+	 * in any other way.
+	 *
+	 * @return The offset after the placeholder.
+	 */
+	private static int any(StringBuilder sqlQuery, int marker) {
+		int close = skip(sqlQuery, marker + 1, 1), open = skip(sqlQuery, marker - 1, -1);
+		if (close >= sqlQuery.length() || sqlQuery.charAt(close) != ')' || open < 0 || sqlQuery.charAt(open) != '(') {
+			return marker + 1;
+		}
+		int in = skip(sqlQuery, open - 1, -1) - 1;
+		if (!word(sqlQuery, in, "in")) {
+			return marker + 1;
+		}
+		int not = skip(sqlQuery, in - 1, -1) - 2;
+		var replacement = "= any(?)";
+		if (word(sqlQuery, not, "not")) {
+			in = not;
+			replacement = "<> all(?)";
+		}
+		sqlQuery.replace(in, close + 1, replacement);
+		return in + replacement.length() - 1;
+	}
+
+	/**
+	 * Whether the placeholder is the sole value of an <code>in</code>, which
+	 * unlike a <code>not in</code>, may be matched in chunks.
+	 */
+	private static boolean included(CharSequence sqlQuery, int marker) {
+		int close = skip(sqlQuery, marker + 1, 1), open = skip(sqlQuery, marker - 1, -1);
+		if (close >= sqlQuery.length() || sqlQuery.charAt(close) != ')' || open < 0 || sqlQuery.charAt(open) != '(') {
+			return false;
+		}
+		int in = skip(sqlQuery, open - 1, -1) - 1;
+		return word(sqlQuery, in, "in") && !word(sqlQuery, skip(sqlQuery, in - 1, -1) - 2, "not");
+	}
+
+	private static int skip(CharSequence sql, int c, int step) {
+		while (c >= 0 && c < sql.length() && Character.isWhitespace(sql.charAt(c))) {
+			c += step;
+		}
+		return c;
+	}
+
+	/** Whether the word starts at the offset and isn't part of a larger word. */
+	private static boolean word(CharSequence sql, int offset, String word) {
+		int end = offset + word.length();
+		if (offset < 0 || end > sql.length() || offset > 0 && Character.isJavaIdentifierPart(sql.charAt(offset - 1))
+				|| end < sql.length() && Character.isJavaIdentifierPart(sql.charAt(end))) {
+			return false;
+		}
+		return sql.subSequence(offset, end).toString().equalsIgnoreCase(word);
+	}
+
+	/**
+	 * Gets the queries active for the given flags, starting with those declared on
+	 * the class.
+	 */
+	private List<Query> activeQueries(int flags) {
+		var queries = queries();
+		var active = new ArrayList<Query>(queries.size());
+		for (var q : queries) {
+			var check = flags & q.mask();
+			if (check == (q.maskRq() == -1 ? q.mask() : q.maskRq())) {
+				active.add(q);
+			}
+		}
+		return active;
+	}
+
+	/** @return Every query of the class then the proxy, in declaration order. */
+	private List<Query> queries() {
+		var queries = new ArrayList<>(Arrays.asList(proxy.getDeclaringClass().getAnnotationsByType(Query.class)));
+		queries.addAll(Arrays.asList(proxy.getAnnotationsByType(Query.class)));
+		return queries;
+	}
+
+	/**
+	 * Adds onto the referenced tables every table that may omit or multiply rows,
+	 * along with every table a referenced table is matched against.
+	 *
+	 * @throws IllegalArgumentException if a semi-joined table is selected from.
+	 */
+	private void joins(Table[] tables, BitSet referenced) {
+		for (var table : tables) {
+			if (table.table() == 0) {
+				continue;
+			}
+			if (table.join() == Table.Join.SEMI || table.join() == Table.Join.EXISTS) {
+				if (referenced.get(table.table())) {
+					throw new IllegalArgumentException(proxy + " references semi-joined table " + table);
+				}
+			}
+			if (table.join() != Table.Join.LEFT_UNIQUE) {
+				referenced.set(table.table());
+			}
+		}
+		int cardinality;
+		do {
+			cardinality = referenced.cardinality();
+			for (var table : tables) {
+				if (table.table() != 0 && referenced.get(table.table())) {
+					var match = table.match();
+					referenced.set(match.table());
+					references(referenced, match.primary());
+				}
+			}
+		} while (cardinality != referenced.cardinality());
+	}
+
+	/**
+	 * Marks every table alias, such as <code>a.x</code>, found within the SQL as
+	 * referenced. May overestimate when the alias appears within a literal.
+	 */
+	private static void references(BitSet referenced, String sql) {
+		for (int c = 0, l = sql.length() - 1; c < l; c++) {
+			char alias = sql.charAt(c);
+			if (alias > '`' && alias <= 'z' && sql.charAt(c + 1) == '.'
+					&& (c == 0 || !Character.isJavaIdentifierPart(sql.charAt(c - 1)) && sql.charAt(c - 1) != '.')) {
+				referenced.set(alias - '`');
+			}
+		}
+	}
+
+	/**
+	 * Pushes the value of the parameter from the result set at 1, or the zero of
+	 * its class if not selected.
+	 *
+	 * @param selected The column of the value when not counting.
+	 * @param counter  The local holding the column when counting, followed by the
+	 *                 local holding the flags.
+	 */
+	private static void column(MethodVisitor mv, String statementHandler, Value value, ClassMap mapper,
+			Class<?> clazz, boolean active, boolean counting, int selected, int counter) {
+		if (!active && !counting) {
+			// Not selected; the proxy receives the default instead.
+			mv.visitInsn(mapper.zero());
+			return;
+		}
+		Label absent = null, done = null;
+		if (counting && value.mask() != 0) {
+			mv.visitVarInsn(Opcodes.ILOAD, counter + 1);
+			mv.visitLdcInsn(value.mask());
+			mv.visitInsn(Opcodes.IAND);
+			mv.visitLdcInsn(value.maskRq() == -1 ? value.mask() : value.maskRq());
+			mv.visitJumpInsn(Opcodes.IF_ICMPNE, absent = new Label());
+		}
+		if (value.intern()) {
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+		}
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		if (counting) {
+			mv.visitIincInsn(counter, 1);
+			mv.visitVarInsn(Opcodes.ILOAD, counter);
+		} else if (selected <= 5) {
+			// Use the single-instruction opcodes where applicable.
+			mv.visitInsn(Opcodes.ICONST_0 + selected);
+		} else {
+			mv.visitIntInsn(Opcodes.BIPUSH, selected);
+		}
+
+		if (mapper == ClassMap.SINK) {
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			var provider = Type.getDescriptor(SqlConnectionProvider.class);
+			mv.visitFieldInsn(Opcodes.GETFIELD, statementHandler, "provider", provider);
+			mv.visitLdcInsn(String.join(".", value.value()));
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, mapper.owner, mapper.getter,
+					"(Ljava/sql/ResultSet;I" + provider + "Ljava/lang/String;)" + mapper.internal.descriptorString(),
+					false);
+		} else if (mapper.owner != null) {
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, mapper.owner, mapper.getter,
+					"(Ljava/sql/ResultSet;I)" + mapper.internal.descriptorString(), false);
+		} else if (mapper.passClass) {
+			var type = Type.getType(clazz);
+			mv.visitLdcInsn(type);
+			mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, RESULT_SET_TYPE, mapper.getter,
+					"(ILjava/lang/Class;)Ljava/lang/Object;", true);
+			mv.visitTypeInsn(Opcodes.CHECKCAST, type.getInternalName());
+		} else {
+			mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, RESULT_SET_TYPE, mapper.getter,
+					"(I)" + mapper.internal.descriptorString(), true);
+		}
+		if (value.intern()) {
+			mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, statementHandler, "intern",
+					"(Ljava/lang/String;)Ljava/lang/String;", false);
+		}
+		if (absent != null) {
+			mv.visitJumpInsn(Opcodes.GOTO, done = new Label());
+			mv.visitLabel(absent);
+			mv.visitInsn(mapper.zero());
+			mv.visitLabel(done);
+		}
+	}
+
+	private void appendQuery(StringBuilder sqlQuery, int table, String[] nameStack) {
 		int c = sqlQuery.length();
 		if (table == 0) {
 			sqlQuery.append(nameStack[0]);
 		} else {
 			sqlQuery.append((char) ('`' + table)).append('.').append(nameStack[0]);
 		}
-		for (int v = 1; v < nameStack.length; v++) {
-			sqlQuery.insert(c, '(').append(").").append(nameStack[v]);
+		if (nameStack.length > 1) {
+			dialect.field(sqlQuery, c, Arrays.copyOfRange(nameStack, 1, nameStack.length));
 		}
 		sqlQuery.append(',');
 	}
 
-	private static class HandlerEntry extends SoftReference<StatementHandler> implements AutoCloseable {
+	/** Work ran against the handler of a record. */
+	@FunctionalInterface
+	private interface Fetch {
+		/** @param executing Accumulates the nanoseconds spent executing statements. */
+		Object fetch(long[] executing) throws SQLException, IOException;
+	}
+
+	static class HandlerEntry extends SoftReference<StatementHandler> implements AutoCloseable {
 		private final int flags;
-		private Statement statement;
+		/** Statements of the handler, held as to be closed once collected. */
+		private final StatementPools pools;
+		/** Approximate amount of times the handler was used. */
+		long hits = 1L;
+		/** Budget the handler is counted against, if any. */
+		private StatementBudget budget;
 
 		public HandlerEntry(int flags, StatementHandler referent, ReferenceQueue<StatementHandler> queue)
 				throws DatabaseException {
 			super(referent, queue);
 			this.flags = flags;
-			prepare();
+			this.pools = referent.pools();
+			referent.prepareStatement();
 		}
 
-		private void prepare() throws DatabaseException {
-			var self = get();
-			if (self != null) {
-				this.statement = self.prepareStatement();
-			}
+		/**
+		 * Closes the statements of the handler, which prepares new statements as
+		 * used.
+		 */
+		void closeStatements() {
+			pools.clear();
 		}
 
+		/**
+		 * Closes the statements of the handler for good, as it has been collected or
+		 * removed. Callers still holding the handler run on statements prepared for
+		 * that call alone.
+		 */
 		@Override
-		public void close() throws DatabaseException {
-			try {
-				var self = get();
-				if (self != null) {
-					self.closeStatement();
-				} else {
-					statement.close();
-				}
-			} catch (SQLException sql) {
-				throw new DatabaseException(sql, statement);
-			} finally {
-				statement = null;
+		public void close() {
+			pools.close();
+		}
+
+		/** Stops counting the handler against its budget, if not already. */
+		private void release() {
+			var budget = this.budget;
+			this.budget = null;
+			if (budget != null) {
+				budget.releaseHandler();
 			}
 		}
 	}
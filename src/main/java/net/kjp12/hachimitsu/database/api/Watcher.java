@@ -0,0 +1,183 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T20:31:18
+
+import net.kjp12.hachimitsu.database.api.annotation.Watch;
+import net.kjp12.hachimitsu.database.impl.Parameters;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Subscription of a record to the new rows of a {@link Watch watched} cache,
+ * completing the record with the rows past the high-water mark on every poll
+ * that found any.
+ * <p>
+ * Watchers of the same flags and parameters share a single poller, which stops
+ * once every one of them has been closed. Failed polls are passed to every
+ * watcher, with the poller backing off by doubling the interval on every
+ * consecutive failure, up to {@value Poller#BACKOFF} doublings.
+ *
+ * @author KJP12
+ * @since ${version}
+ * @see StatementCache#watch(DatabaseRecord, Duration, double)
+ **/
+public final class Watcher<I extends DatabaseRecord<?>> implements AutoCloseable {
+	private final Poller<I> poller;
+	private final I record;
+	private final Consumer<? super Exception> errors;
+
+	private Watcher(Poller<I> poller, I record, Consumer<? super Exception> errors) {
+		this.poller = poller;
+		this.record = record;
+		this.errors = errors;
+	}
+
+	/** @return The high-water mark of the last poll. */
+	public long mark() {
+		return poller.mark;
+	}
+
+	/** @return The failure of the last poll, or null if it succeeded. */
+	public Exception failure() {
+		return poller.failure;
+	}
+
+	/**
+	 * Stops completing the record, with any poll in progress still completing it.
+	 */
+	@Override
+	public void close() {
+		poller.unsubscribe(this);
+	}
+
+	/**
+	 * Flags and captured parameters shared by identical records, the parameters
+	 * being replayed on every poll.
+	 */
+	record Key(int flags, Parameters parameters) {
+	}
+
+	/**
+	 * Polls on behalf of every watcher of the key, scheduling the next poll with
+	 * jitter once the last has completed, as to never overlap.
+	 */
+	static final class Poller<I extends DatabaseRecord<?>> implements Runnable {
+		/** The most doublings of the interval while backing off. */
+		static final int BACKOFF = 6;
+
+		private final CopyOnWriteArrayList<Watcher<I>> watchers = new CopyOnWriteArrayList<>();
+		private final StatementCache<I> cache;
+		private final Key key;
+		private final long interval;
+		private final double jitter;
+		private final Executor executor;
+		private volatile long mark = Long.MIN_VALUE;
+		private volatile Exception failure;
+		private volatile boolean closed;
+		/** Consecutive failed polls, only touched by the poll itself. */
+		private int failures;
+
+		Poller(StatementCache<I> cache, Key key, long interval, double jitter, Executor executor) {
+			this.cache = cache;
+			this.key = key;
+			this.interval = interval;
+			this.jitter = jitter;
+			this.executor = executor;
+		}
+
+		/**
+		 * Adds a watcher of the record, starting to poll if it is the first.
+		 *
+		 * @return The watcher, or null if the poller has been closed.
+		 */
+		synchronized Watcher<I> subscribe(I record, Consumer<? super Exception> errors) {
+			if (closed) {
+				return null;
+			}
+			var watcher = new Watcher<>(this, record, errors);
+			watchers.add(watcher);
+			if (watchers.size() == 1) {
+				executor.execute(this);
+			}
+			return watcher;
+		}
+
+		synchronized void unsubscribe(Watcher<I> watcher) {
+			if (watchers.remove(watcher) && watchers.isEmpty()) {
+				closed = true;
+				cache.unwatch(key, this);
+			}
+		}
+
+		@Override
+		public void run() {
+			if (closed) {
+				return;
+			}
+			try {
+				Watcher<I> first = null;
+				for (var watcher : watchers) {
+					first = watcher;
+					break;
+				}
+				if (first == null) {
+					return;
+				}
+				var holder = new long[] { mark };
+				var rows = cache.poll(first.record, key.parameters, holder);
+				mark = holder[0];
+				failure = null;
+				failures = 0;
+				if (rows instanceof Collection<?> collection && collection.isEmpty()) {
+					return;
+				}
+				for (var watcher : watchers) {
+					complete(watcher.record, rows);
+				}
+			} catch (DatabaseException | RuntimeException e) {
+				failure = e;
+				failures++;
+				for (var watcher : watchers) {
+					if (watcher.errors != null) {
+						watcher.errors.accept(e);
+					}
+				}
+			} finally {
+				schedule();
+			}
+		}
+
+		private void schedule() {
+			if (closed) {
+				return;
+			}
+			double factor = 1D + jitter * (ThreadLocalRandom.current().nextDouble() * 2D - 1D);
+			long delay = (long) (interval * factor) << Math.min(failures, BACKOFF);
+			CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS, executor).execute(this);
+		}
+
+		@SuppressWarnings("unchecked")
+		private static void complete(DatabaseRecord<?> record, Object result) {
+			((DatabaseRecord<Object>) record).complete(result);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api.annotation;// Created 2026-19-10T17:52:31
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Selects an aggregate of the {@link Value value} rather than the value itself,
+ * reducing the rows within the database.
+ * <p>
+ * Once any parameter is aggregated, the rows are grouped by every parameter that
+ * isn't, along with any additional {@link GroupBy#value() columns}. With every
+ * parameter aggregated, the whole result is reduced into a single row.
+ *
+ * @implNote The parameter's type picks how the aggregate is read, as such, a
+ *           {@link Function#COUNT count} should be taken as a
+ *           <code>long</code>, and an {@link Function#AVG average} as a
+ *           <code>double</code> or {@link java.math.BigDecimal}. Cannot be used
+ *           alongside a {@link Split split}, nor with the count or exists
+ *           {@link Shape shapes}.
+ * @author KJP12
+ * @since ${version}
+ **/
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Aggregate {
+	Function value();
+
+	/** Whether only distinct values are aggregated. */
+	boolean distinct() default false;
+
+	enum Function {
+		/** The amount of non-null values. */
+		COUNT,
+		SUM,
+		MIN,
+		MAX,
+		AVG
+	}
+}
@@ -0,0 +1,55 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api.annotation;// Created 2026-19-10T17:54:06
+
+import net.kjp12.hachimitsu.database.impl.C0;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Groups the rows by additional columns, and filters the groups.
+ * <p>
+ * The rows are always grouped by every parameter that isn't
+ * {@link Aggregate aggregated}, as such, this is only required to group by
+ * columns that aren't selected, or to filter the groups.
+ *
+ * @implNote Cannot be used alongside a {@link Split split}, nor with the count
+ *           or exists {@link Shape shapes}.
+ * @author KJP12
+ * @since ${version}
+ **/
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface GroupBy {
+	/** Additional columns to group by. */
+	Value[] value() default {};
+
+	/**
+	 * The condition the groups must meet, such as <code>count(*) &gt; ?</code>.
+	 * Ignored when blank.
+	 */
+	String having() default "";
+
+	/**
+	 * The values to bind onto the {@link #having() condition}.
+	 *
+	 * @see Query#values()
+	 * @see C0
+	 */
+	String[] values() default {};
+}
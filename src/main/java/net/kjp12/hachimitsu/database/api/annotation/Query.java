@@ -15,6 +15,7 @@
 package net.kjp12.hachimitsu.database.api.annotation;// Created 2021-18-06T01:24:12
 
 import net.kjp12.hachimitsu.database.api.DatabaseRecord;
+import net.kjp12.hachimitsu.database.api.StatementCache;
 import net.kjp12.hachimitsu.database.impl.C0;
 import net.kjp12.hachimitsu.database.impl.ClassMap;
 
@@ -32,12 +33,24 @@ public @interface Query {
 	 * Mini code snippets referencing off the input {@link DatabaseRecord record}.
 	 * <p>
 	 * You can optionally dereference off of the SQL provider by prefixing with
-	 * <code>^</code>.
+	 * <code>^</code>. Writing <code>^#</code> instead memoizes the following call
+	 * across invocations, keyed by its single argument if any, until
+	 * {@link StatementCache#invalidate() invalidated}.
 	 * <p>
 	 * Local variable support is available with loading via <code>&lt;0</code> and
 	 * storing via <code>&gt;0</code>. A check can be added on load to continue
 	 * execution by appending <code>?</code> right after the number. If the variable
 	 * was not stored before, the following code will execute.
+	 * <p>
+	 * Collections and arrays other than <code>byte[]</code> are bound as a list of
+	 * values, and are to be placed within <code>in (?)</code>. Where the database
+	 * supports it, the collection is bound as a single array, rewriting the query
+	 * into <code>= any(?)</code>. Otherwise, the placeholder is expanded to the
+	 * next power of two up to 512, padded by repeating the last value. Larger
+	 * collections are matched in chunks of 512 distinct values, executing the
+	 * statement once per chunk, which is only allowed for lists within
+	 * <code>in</code> without pagination, aggregation, a split or a watch. An empty
+	 * collection matches nothing, including within <code>not in</code>.
 	 *
 	 * @implNote The value referenced must either be mapped by {@link ClassMap} or
 	 *           be supported by your database driver. There is no distinction
@@ -66,4 +79,13 @@ public @interface Query {
 	 * Required flags in order to add the query.
 	 */
 	int maskRq() default -1;
+
+	/**
+	 * Deadline in milliseconds for statements including this query, after which
+	 * the statement will be cancelled. When multiple queries define a deadline,
+	 * the shortest will be used.
+	 * <p>
+	 * Defaults to the deadline set on the cache.
+	 */
+	long timeout() default 0;
 }
@@ -0,0 +1,57 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api.annotation;// Created 2026-19-10T14:20:58
+
+import net.kjp12.hachimitsu.database.api.DatabaseRecord;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Changes the shape of the result passed onto
+ * {@link DatabaseRecord#complete(Object)}.
+ *
+ * @author KJP12
+ * @since ${version}
+ **/
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Shape {
+	Kind value();
+
+	enum Kind {
+		/** An {@link java.util.ArrayList} of every row. The default. */
+		LIST,
+		/**
+		 * The first row, or null if there were none. Only one row is requested from
+		 * the driver.
+		 */
+		SINGLE,
+		/** As {@link #SINGLE}, wrapped in an {@link java.util.Optional}. */
+		OPTIONAL,
+		/**
+		 * A {@link Long} of the amount of matching rows. Selections, sorting and
+		 * pagination are ignored.
+		 */
+		COUNT,
+		/**
+		 * A {@link Boolean} of whether any row matches. Selections, sorting and
+		 * pagination are ignored.
+		 */
+		EXISTS
+	}
+}
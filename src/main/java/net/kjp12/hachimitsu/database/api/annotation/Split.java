@@ -0,0 +1,55 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api.annotation;// Created 2026-19-10T09:12:40
+
+import net.kjp12.hachimitsu.database.api.ConnectionPool;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Splits a scan into multiple range-bounded statements that are ran in
+ * parallel, with the results being combined before being completed.
+ * <p>
+ * The bounds are taken from the <code>min</code> and <code>max</code> of the
+ * {@link #value() column} among the rows matching the active queries on each
+ * invocation, then divided into up to {@link #partitions() partitions}
+ * inclusive ranges.
+ *
+ * @implNote The column must be integral, and should be indexed. Results are
+ *           combined in range order, as such, only the split column may be
+ *           {@link Pagination#sort() sorted} by. Requires the provider to be a
+ *           {@link ConnectionPool}. Cannot be used alongside a
+ *           {@link Pagination#limit() limit} or {@link Pagination#offset()
+ *           offset}, nor with a single row {@link Shape shape}. Counts are
+ *           summed and existence checks are combined.
+ * @author KJP12
+ * @since ${version}
+ **/
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Split {
+	/** The column to split the scan on. */
+	Value value();
+
+	/**
+	 * The maximum amount of partitions to run in parallel.
+	 * <p>
+	 * Each partition borrows its own connection from the pool.
+	 */
+	int partitions();
+}
@@ -33,8 +33,46 @@ public @interface Table {
 	/**
 	 * Columns to check against within the join.
 	 *
-	 * @implNote This <em>always</em> does an <code>left outer join</code>, and as
-	 *           such, will never cause a row to be omitted.
+	 * @implNote By default, this does a <code>left outer join</code>, and as such,
+	 *           will never cause a row to be omitted.
+	 * @see #join()
 	 */
 	Match match() default @Match;
+
+	/**
+	 * Index the database should use for the table, hinted in the
+	 * {@link net.kjp12.hachimitsu.database.api.Dialect#index dialect's} syntax.
+	 * Ignored where the dialect doesn't support hints.
+	 */
+	String index() default "";
+
+	/**
+	 * How the table is joined against the {@link Match#table() matching table}.
+	 * Ignored on the primary table.
+	 */
+	Join join() default Join.LEFT;
+
+	enum Join {
+		/** <code>left outer join</code>. Always present, never omitting rows. */
+		LEFT,
+		/**
+		 * <code>left outer join</code> matching at most one row, such as on a
+		 * unique key. Dropped from any variant that neither selects nor filters on
+		 * the table, which would change the result if more than one row could
+		 * match.
+		 */
+		LEFT_UNIQUE,
+		/** <code>inner join</code>. Always present, omitting rows without a match. */
+		INNER,
+		/**
+		 * <code>primary in (select secondary from table)</code>. Always present,
+		 * omitting rows without a match. The table cannot be selected from.
+		 */
+		SEMI,
+		/**
+		 * <code>exists(select 1 from table where primary=secondary)</code>. As
+		 * {@link #SEMI}, but as a correlated sub-query for planners that favour it.
+		 */
+		EXISTS
+	}
 }
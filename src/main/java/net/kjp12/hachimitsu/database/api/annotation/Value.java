@@ -38,11 +38,43 @@ public @interface Value {
 	 * nested sub-queries up to the last entry.
 	 * <p>
 	 * When given <code>{"cause_pos", "x"}</code>, the selection will be converted
-	 * into <code>(cause_pos).x</code> when inserted into the SQL statement.
+	 * into <code>(cause_pos).x</code> when inserted into the SQL statement, or the
+	 * equivalent within the provider's
+	 * {@link net.kjp12.hachimitsu.database.api.Dialect#field dialect}.
 	 * <p>
 	 * If the {@link #table() table} isn't the primary table, a letter will be
 	 * assigned starting at <code>a</code>. A possible outcome can be
 	 * <code>a.x</code>, or with a nested selection, <code>(a.cause_pos).x</code>.
 	 */
 	String[] value();
+
+	/**
+	 * Mask for the flags under which the parameter is selected. May be used
+	 * standalone, or with {@link #maskRq()} for multiple flags. Always selected
+	 * when 0.
+	 * <p>
+	 * When not selected, the proxy receives <code>0</code>, <code>false</code> or
+	 * <code>null</code> instead. Only applies to the parameters of the proxy.
+	 *
+	 * @see Query#mask()
+	 */
+	int mask() default 0;
+
+	/**
+	 * Required flags in order to select the parameter.
+	 */
+	int maskRq() default -1;
+
+	/**
+	 * Whether the string read from the column should be shared with equal strings
+	 * read previously by the same handler. Meant for columns of few distinct
+	 * values, such as names, reducing the memory held by large or cached
+	 * results.
+	 *
+	 * @implNote Strings are still read by the driver for each row; only the
+	 *           retained copies are reduced. The table is bounded, as such,
+	 *           columns of many distinct values will only rarely be shared. Only
+	 *           applies to string parameters of the proxy.
+	 */
+	boolean intern() default false;
 }
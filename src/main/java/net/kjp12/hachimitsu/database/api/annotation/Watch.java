@@ -0,0 +1,55 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.api.annotation;// Created 2026-19-10T20:06:52
+
+import net.kjp12.hachimitsu.database.api.DatabaseRecord;
+import net.kjp12.hachimitsu.database.api.StatementCache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.time.Duration;
+
+/**
+ * Allows the results to be watched for new rows by the high-water mark of a
+ * unique integral column, such as an auto-incremented id.
+ * <p>
+ * The statement is restricted to rows past the mark, being ordered by the
+ * {@link #value() column} ascending, where the mark is then taken from the last
+ * row. Handled directly, every row is selected as the mark starts at the lowest
+ * possible value.
+ * <p>
+ * The column must be unique and increase in the order rows are committed. A
+ * row committed after a poll with a value at or below the mark, such as a
+ * duplicate of the mark or a slower transaction's lower id, is skipped.
+ *
+ * @implNote The column is bound and read as a long, and should be indexed,
+ *           as such, timestamps are not supported. Cannot be used alongside a
+ *           {@link Split split}, any aggregation, a {@link Pagination#sort()
+ *           sort} or {@link Pagination#offset() offset}, nor any
+ *           {@link Shape shape} but a list. A {@link Pagination#limit() limit}
+ *           caps the rows of each poll, with the remainder being fetched by the
+ *           following polls.
+ * @author KJP12
+ * @since ${version}
+ * @see StatementCache#watch(DatabaseRecord, Duration, double)
+ **/
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Watch {
+	/** The column to take the high-water mark from. */
+	Value value();
+}
@@ -17,6 +17,7 @@ package net.kjp12.hachimitsu.database.impl;// Created 2021-22-06T05:23:53
 import net.kjp12.hachimitsu.database.api.SqlConnectionProvider;
 import net.kjp12.hachimitsu.database.api.StatementCache;
 import net.kjp12.hachimitsu.database.api.annotation.Query;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -25,6 +26,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.function.Function;
 
 /**
  * SQL Submitter Compiler. Expects a certain structure, do not attempt to use
@@ -39,6 +41,7 @@ import java.util.Arrays;
  * href="#class-ref1">[1]</a></sup>
  * <b>?  </b> L*.1 &gt; 0, IFNUL<sup><a href="#class-ref2">[2]</a></sup>
  * <b>^  </b> L*.0 &gt; 0, ALOAD  3<sup><a href="#class-ref3">[3]</a></sup>
+ * <b>#  </b> L*.0 &gt; 0, MEMO   ^<sup><a href="#class-ref5">[5]</a></sup>
  * <b>(  </b> L*.0 &gt; 0, PUSH   L2
  * <b>)  </b> L2.0 &gt; 0, POP    L2
  * <b>,  </b> L1.0 &gt; 0, POP    L1
@@ -46,27 +49,32 @@ import java.util.Arrays;
  * <b>NUL</b> L*.* &gt;  , POP    *<sup><a href="#class-ref4">[4]</a></sup>
  * </pre>
  * <ul>
- * <li id="class-ref1"><b>1</b> - +4 offset is required for variables. The
- * selected opcode is dependent on the variable at call time.</li>
+ * <li id="class-ref1"><b>1</b> - +4 offset is required for variables, +6 when
+ * {@link #branching(MethodVisitor) branching}. The selected opcode is
+ * dependent on the variable at call time.</li>
  * <li id="class-ref2"><b>2</b> - C0 compilation intrinsic candidate.</li>
  * <li id="class-ref3"><b>3</b> - This loads the provider and immediately casts
  * it to the applicable class.</li>
  * <li id="class-ref4"><b>4</b> - End of File, must pop or crash. Must be
  * allowed under all contexts.</li>
+ * <li id="class-ref5"><b>5</b> - Only allowed following the carrot. The next
+ * call of the provider, taking at most one argument, is memoized across
+ * invocations within a {@link Memo} keyed by its argument.</li>
  * </ul>
  * <p>
  * <h3>Contexts</h3>
  * <ul>
- * <li>Allowed off of <code>L*.0</code> = <code>&lt;&gt;^.(</code></li>
+ * <li>Allowed off of <code>L*.0</code> = <code>&lt;&gt;^#.(</code></li>
  * <li>Allowed off of <code>L*.1</code> = <code>?.</code></li>
  * <li>Allowed off of <code>L*.2</code> = <code>.</code></li>
- * <li>Allowed off of <code>L1.0</code> = <code>&lt;&gt;^.,()</code></li>
+ * <li>Allowed off of <code>L1.0</code> = <code>&lt;&gt;^#.,()</code></li>
  * </ul>
  * <p>
  * <h3>Code compilation</h3> <code>&lt;0?^.worldIndex(causeWorld)&gt;0</code>
  *
  * <h4>First encounter of both variable 0 and carrot</h4>
- * <code>..., var4 = (var3 = (Carrier) this.provider).worldIndex(var1.causeWorld), ...</code>
+ * <code>..., var4 = (var3 = (Carrier)
+ * this.provider).worldIndex(var1.causeWorld), ...</code>
  * 
  * <pre>
  * ALOAD         0
@@ -99,6 +107,38 @@ import java.util.Arrays;
  * ILOAD         4
  * </pre>
  *
+ * <h4>Memoized</h4> <code>^#.worldIndex(causeWorld)</code>
+ * 
+ * <pre>
+ * ALOAD         3
+ * ALOAD         1
+ * GETFIELD      your/Record  causeWorld  Lyour/World;
+ * ALOAD         0
+ * GETFIELD      impl/Handler variant     Limpl/Variant;
+ * GETFIELD      impl/Variant memos       [Limpl/Memo;
+ * ICONST_0
+ * AALOAD
+ * SWAP
+ * INVOKEVIRTUAL impl/Memo    get         (Ljava/lang/Object;)Ljava/lang/Object;
+ * DUP
+ * INSTANCEOF    impl/Memo$Miss
+ * IFEQ          hit
+ * CHECKCAST     impl/Memo$Miss
+ * DUP_X1
+ * INVOKEVIRTUAL impl/Memo$Miss key       ()Ljava/lang/Object;
+ * CHECKCAST     your/World
+ * INVOKEVIRTUAL your/Carrier worldIndex  (Lyour/World;)I
+ * INVOKESTATIC  java/lang/Integer valueOf (I)Ljava/lang/Integer;
+ * INVOKEVIRTUAL impl/Memo$Miss put       (Ljava/lang/Object;)Ljava/lang/Object;
+ * GOTO          end
+ * hit:
+ * SWAP
+ * POP
+ * end:
+ * CHECKCAST     java/lang/Integer
+ * INVOKEVIRTUAL java/lang/Integer intValue ()I
+ * </pre>
+ *
  * @author KJP12
  * @since ${version}
  * @see ClassMap
@@ -107,21 +147,30 @@ import java.util.Arrays;
  **/
 public class C0 implements Opcodes {
 	private static final char[] T_NONE = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-			0, 0, 0, 0, '^', 0, 0, 0, 0, 0, 0, 0, 0, 0, '(', ')', 0, 0, ',', 0, '.', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-			0, '<', 0, '>', 0 }, // StringUtils.createCharHashArray("<>^.,()\0"),
+			0, 0, 0, 0, '^', 0, 0, 0, 0, '#', 0, 0, 0, 0, '(', ')', 0, 0, ',', 0, '.', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+			0, 0, '<', 0, '>', 0 }, // StringUtils.createCharHashArray("<>^#.,()\0"),
 			T_LOAD = { 0, ')', 0, 0, ',', 0, '.', '?' }, // StringUtils.createCharHashArray("?.,)\0"),
 			T_STORE = { 0, ')', 0, 0, ',', 0, '.', 0 }; // StringUtils.createCharHashArray(".,)\0");
 
 	private static final String statementHandler = Type.getInternalName(StatementHandler.class),
-			providerName = Type.getInternalName(SqlConnectionProvider.class);
+			providerName = Type.getInternalName(SqlConnectionProvider.class),
+			variantName = Type.getInternalName(Variant.class), memoName = Type.getInternalName(Memo.class),
+			missName = Type.getInternalName(Memo.Miss.class);
 
 	private static final int C_NONE = 0, C_LOAD = 1, C_STORE = 2;
 
 	private int ia, ib, is;
 	private String value;
+	/** Whether the next call is to be memoized. */
+	private boolean memoize;
+	private Function<Method, Memo> memoizer;
+	/** Memo of every memoized call, indexed by site. */
+	private final ArrayList<Memo> memos = new ArrayList<>();
 
 	int index = 0;
-	boolean carrot = false;
+	/** The slot of variable 0, shifted when slots are taken by flag branching. */
+	int offset = 4;
+	boolean carrot = false, arrays = false, branching = false;
 	Class<?>[] locals = new Class<?>[0];
 	Class<?> fallback;
 	Class<? extends SqlConnectionProvider> sqlImpl;
@@ -131,11 +180,109 @@ public class C0 implements Opcodes {
 		this.sqlImpl = sqlImpl;
 	}
 
-	public void compile(MethodVisitor submit, String value) throws NoSuchFieldException, NoSuchMethodException {
+	/**
+	 * @param index  The amount of parameters already bound by the handler itself.
+	 * @param arrays Whether collections are to be bound as a single array.
+	 */
+	public C0(Class<?> fallback, Class<? extends SqlConnectionProvider> sqlImpl, int index, boolean arrays) {
+		this(fallback, sqlImpl);
+		this.index = index;
+		this.arrays = arrays;
+	}
+
+	/**
+	 * Allows provider calls to be memoized with <code>#</code>.
+	 *
+	 * @param memoizer Gets the memo of the provider's method.
+	 */
+	public void memoize(Function<Method, Memo> memoizer) {
+		this.memoizer = memoizer;
+	}
+
+	/**
+	 * @return The memo of every memoized call so far, indexed by site. Null if
+	 *         none were memoized.
+	 */
+	public Memo[] memos() {
+		return memos.isEmpty() ? null : memos.toArray(new Memo[0]);
+	}
+
+	/**
+	 * Starts a method shared by every flags value, where each query is only bound
+	 * if {@link #branch(MethodVisitor, Query, Label) active}. The index is then
+	 * kept at 4 and the flags at 5, shifting variables to 6.
+	 *
+	 * @param submit The visitor, at the start of the method.
+	 */
+	public void branching(MethodVisitor submit) {
+		branching = true;
+		offset = 6;
+		pushInt(submit, index);
+		submit.visitVarInsn(Opcodes.ISTORE, 4);
+		submit.visitVarInsn(Opcodes.ALOAD, 0);
+		submit.visitMethodInsn(Opcodes.INVOKEVIRTUAL, statementHandler, "flags", "()I", false);
+		submit.visitVarInsn(Opcodes.ISTORE, 5);
+	}
+
+	/**
+	 * Jumps to skip unless the query is active for the handler's flags.
+	 * <p>
+	 * As the query may not have ran, the carrot and every variable are forgotten
+	 * both within and after the query, being reloaded on next use. Only variables
+	 * loaded with <code>?</code> may be shared across queries.
+	 *
+	 * @param submit The visitor.
+	 * @param query  The query to test for.
+	 * @param skip   The label to {@link #merge(MethodVisitor, Label) merge} at
+	 *               following the query's values.
+	 */
+	public void branch(MethodVisitor submit, Query query, Label skip) {
+		submit.visitVarInsn(Opcodes.ILOAD, 5);
+		pushInt(submit, query.mask());
+		submit.visitInsn(Opcodes.IAND);
+		pushInt(submit, query.maskRq() == -1 ? query.mask() : query.maskRq());
+		submit.visitJumpInsn(Opcodes.IF_ICMPNE, skip);
+		forget();
+	}
+
+	/**
+	 * Visits the label following a {@link #branch(MethodVisitor, Query, Label)
+	 * branch}, forgetting whatever was loaded within it.
+	 */
+	public void merge(MethodVisitor submit, Label skip) {
+		submit.visitLabel(skip);
+		forget();
+	}
+
+	private void forget() {
+		carrot = false;
+		locals = new Class<?>[0];
+	}
+
+	public static void pushInt(MethodVisitor submit, int value) {
+		if (value >= -1 && value <= 5) {
+			submit.visitInsn(Opcodes.ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			submit.visitIntInsn(Opcodes.BIPUSH, value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			submit.visitIntInsn(Opcodes.SIPUSH, value);
+		} else {
+			submit.visitLdcInsn(value);
+		}
+	}
+
+	/**
+	 * @return The class of the bound value. Collections are bound as is unless
+	 *         binding as arrays, to be expanded by {@link Parameters}.
+	 */
+	public Class<?> compile(MethodVisitor submit, String value) throws NoSuchFieldException, NoSuchMethodException {
 		// Load statement into stack.
 		submit.visitVarInsn(Opcodes.ALOAD, 2);
 		// Load the index onto the stack.
-		if (++index <= 5) {
+		if (branching) {
+			submit.visitIincInsn(4, 1);
+			submit.visitVarInsn(Opcodes.ILOAD, 4);
+		} else if (++index <= 5) {
 			submit.visitInsn(Opcodes.ICONST_0 + index);
 		} else {
 			submit.visitIntInsn(Opcodes.BIPUSH, index);
@@ -144,10 +291,23 @@ public class C0 implements Opcodes {
 		this.value = value;
 		ia = ib = -1;
 		is = C_NONE;
-		var mapper = ClassMap.findMapper(l1(submit, false));
+		memoize = false;
+		var clazz = l1(submit, false);
+		if (arrays && Parameters.isCollection(clazz)) {
+			submit.visitMethodInsn(Opcodes.INVOKESTATIC, statementHandler, "array",
+					"(Ljava/sql/PreparedStatement;ILjava/lang/Object;)V", false);
+			return clazz;
+		}
+		var mapper = ClassMap.findMapper(clazz);
+		if (mapper.owner != null) {
+			submit.visitMethodInsn(Opcodes.INVOKESTATIC, mapper.owner, mapper.setter,
+					"(Ljava/sql/PreparedStatement;I" + mapper.internal.descriptorString() + ")V", false);
+			return clazz;
+		}
 		submit.visitMethodInsn(Opcodes.INVOKEINTERFACE, "java/sql/PreparedStatement", mapper.setter,
 				"(I" + (mapper == ClassMap.VOID ? "Ljava/lang/Object;" : mapper.internal.descriptorString()) + ")V",
 				true);
+		return clazz;
 	}
 
 	/**
@@ -174,6 +334,13 @@ public class C0 implements Opcodes {
 							lc(submit);
 							context = sqlImpl;
 						}
+						case '#' -> {
+							if (memoizer == null || memoize || context != sqlImpl || ib - ia > 0) {
+								throw new IllegalArgumentException(
+										value + " @ " + ib + " `#` must directly follow `^`. " + this);
+							}
+							memoize = true;
+						}
 						case '.', ',', ')', '\0' -> {
 							if (ib - ia > 1) {
 								if (context == void.class) {
@@ -192,6 +359,9 @@ public class C0 implements Opcodes {
 								context = fallback;
 							}
 							var name = value.substring(ia, ib);
+							// Arguments may make calls of their own.
+							boolean memoized = memoize;
+							memoize = false;
 							var params = l2(submit);
 							var m = Arrays.stream(context.getMethods()).filter(method -> method.getName().equals(name)
 									&& method.getParameterCount() == params.length).filter(method -> {
@@ -203,7 +373,7 @@ public class C0 implements Opcodes {
 										}
 										return true;
 									}).findFirst().get();
-							context = vm(submit, m);
+							context = memoized ? vmm(submit, m) : vm(submit, m);
 						}
 					}
 				}
@@ -213,7 +383,7 @@ public class C0 implements Opcodes {
 						case '?' -> {
 							var clazz = getLocal(v);
 							if (clazz != null) {
-								submit.visitVarInsn(ClassMap.findMapper(clazz).load, v + 4);
+								submit.visitVarInsn(ClassMap.findMapper(clazz).load, v + offset);
 								// TODO: does not support method calls
 								var ne = value.indexOf(';');
 								ib = ne == -1 ? value.length() : ne;
@@ -225,7 +395,7 @@ public class C0 implements Opcodes {
 							if (context == null) {
 								throw new IllegalStateException("local " + v + " not stored " + this);
 							}
-							submit.visitVarInsn(ClassMap.findMapper(context).load, v + 4);
+							submit.visitVarInsn(ClassMap.findMapper(context).load, v + offset);
 						}
 					}
 					is = C_NONE;
@@ -238,7 +408,7 @@ public class C0 implements Opcodes {
 					// Originally matches `.`, `,`, `)`
 					setLocal(v, context);
 					submit.visitInsn(Opcodes.DUP);
-					submit.visitVarInsn(ClassMap.findMapper(context).store, v + 4);
+					submit.visitVarInsn(ClassMap.findMapper(context).store, v + offset);
 					is = C_NONE;
 				}
 			}
@@ -329,6 +499,78 @@ public class C0 implements Opcodes {
 		return method.getReturnType();
 	}
 
+	/**
+	 * Visits the method through its memo, as to only call it on a miss. The
+	 * receiver and argument, if any, are expected on the stack.
+	 *
+	 * @param submit The visitor
+	 * @param method The provider's method to memoize.
+	 * @return The return type of the method.
+	 */
+	private Class<?> vmm(MethodVisitor submit, Method method) {
+		var params = method.getParameterTypes();
+		var ret = method.getReturnType();
+		if (params.length > 1 || ret == void.class || (method.getModifiers() & Opcodes.ACC_STATIC) != 0) {
+			throw new IllegalArgumentException(method + " cannot be memoized; requires at most one argument, a "
+					+ "return value and the provider as the receiver. " + this);
+		}
+		var key = params.length == 0 ? null : boxable(method, params[0]);
+		var value = boxable(method, ret);
+		if (key == null) {
+			submit.visitInsn(Opcodes.ACONST_NULL);
+		} else {
+			key.box(submit);
+		}
+		submit.visitVarInsn(Opcodes.ALOAD, 0);
+		submit.visitFieldInsn(Opcodes.GETFIELD, statementHandler, "variant", 'L' + variantName + ';');
+		submit.visitFieldInsn(Opcodes.GETFIELD, variantName, "memos", "[L" + memoName + ';');
+		pushInt(submit, memos.size());
+		submit.visitInsn(Opcodes.AALOAD);
+		memos.add(memoizer.apply(method));
+		submit.visitInsn(Opcodes.SWAP);
+		submit.visitMethodInsn(Opcodes.INVOKEVIRTUAL, memoName, "get", "(Ljava/lang/Object;)Ljava/lang/Object;",
+				false);
+
+		var hit = new Label();
+		var end = new Label();
+		submit.visitInsn(Opcodes.DUP);
+		submit.visitTypeInsn(Opcodes.INSTANCEOF, missName);
+		submit.visitJumpInsn(Opcodes.IFEQ, hit);
+		// Receiver, miss -> miss, receiver, argument
+		submit.visitTypeInsn(Opcodes.CHECKCAST, missName);
+		submit.visitInsn(Opcodes.DUP_X1);
+		if (params.length == 0) {
+			submit.visitInsn(Opcodes.POP);
+		} else {
+			submit.visitMethodInsn(Opcodes.INVOKEVIRTUAL, missName, "key", "()Ljava/lang/Object;", false);
+			key.unbox(submit, params[0]);
+		}
+		vm(submit, method);
+		value.box(submit);
+		submit.visitMethodInsn(Opcodes.INVOKEVIRTUAL, missName, "put", "(Ljava/lang/Object;)Ljava/lang/Object;",
+				false);
+		submit.visitJumpInsn(Opcodes.GOTO, end);
+		// Receiver, result -> result
+		submit.visitLabel(hit);
+		submit.visitInsn(Opcodes.SWAP);
+		submit.visitInsn(Opcodes.POP);
+		submit.visitLabel(end);
+		value.unbox(submit, ret);
+		return ret;
+	}
+
+	/**
+	 * @return The mapper boxing the class, being {@link ClassMap#VOID} for
+	 *         references.
+	 */
+	private ClassMap boxable(Method method, Class<?> clazz) {
+		var mapper = ClassMap.findMapper(clazz);
+		if (clazz.isPrimitive() && mapper.internal != clazz) {
+			throw new IllegalArgumentException(method + " cannot be memoized; " + clazz + " cannot be boxed. " + this);
+		}
+		return mapper;
+	}
+
 	/**
 	 * Visit field using parameters obtained from reflective access.
 	 *
@@ -359,8 +601,8 @@ public class C0 implements Opcodes {
 	@Override
 	public String toString() {
 		return "C0{" + "ia=" + ia + ", ib=" + ib + ", is=" + is + ", value='" + value + '\'' + ", index=" + index
-				+ ", carrot=" + carrot + ", locals=" + Arrays.toString(locals) + ", fallback=" + fallback + ", sqlImpl="
-				+ sqlImpl + '}';
+				+ ", carrot=" + carrot + ", memoize=" + memoize + ", arrays=" + arrays + ", branching=" + branching
+				+ ", locals=" + Arrays.toString(locals) + ", fallback=" + fallback + ", sqlImpl=" + sqlImpl + '}';
 	}
 
 	private static int seekToDelimiter(final String toSplit, final char[] delimiters, final int lim, int ib) {
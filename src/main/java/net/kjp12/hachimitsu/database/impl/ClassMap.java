@@ -14,9 +14,16 @@
 
 package net.kjp12.hachimitsu.database.impl;// Created 2021-20-06T10:25:13
 
+import net.kjp12.hachimitsu.database.api.FileRegion;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 import java.io.InputStream;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.sql.Timestamp;
 import java.util.IdentityHashMap;
 
@@ -35,13 +42,22 @@ public enum ClassMap {
 	DOUBLE(double.class, "setDouble", "getDouble", Opcodes.DLOAD, Opcodes.DSTORE),
 	STRING(String.class, "setString", "getString"),
 	TIMESTAMP(Timestamp.class, "setTimestamp", "getTimestamp"),
-	INPUT_STREAM(InputStream.class, "setBinaryStream", "getBinaryStream");
+	INPUT_STREAM(InputStream.class, "setBinaryStream", "getBinaryStream"),
+	BYTE_BUFFER(ByteBuffer.class, "setBuffer", "getBuffer", Lobs.class),
+	CHANNEL(ReadableByteChannel.class, "setChannel", "getChannel", Lobs.class),
+	FILE_REGION(FileRegion.class, "setRegion", "getRegion", Lobs.class),
+	SINK(WritableByteChannel.class, "setSink", "getSink", Lobs.class);
 
 	static final IdentityHashMap<Class<?>, ClassMap> intern = new IdentityHashMap<>();
 	public final Class<?> internal;
 	public final String setter, getter;
 	public final boolean passClass, tryBox;
 	public final int load, store;
+	/**
+	 * Internal name of the class holding static accessors taking the statement or
+	 * result set first, or null to call the statement and result set directly.
+	 */
+	public final String owner;
 
 	ClassMap(Class<?> internal, String setter, String getter, int load, int store, boolean passClass, boolean tryBox) {
 		this.internal = internal;
@@ -51,6 +67,7 @@ public enum ClassMap {
 		this.store = store;
 		this.passClass = passClass;
 		this.tryBox = tryBox;
+		this.owner = null;
 	}
 
 	ClassMap(Class<?> internal, String setter, String getter, int load, int store) {
@@ -61,12 +78,58 @@ public enum ClassMap {
 		this(internal, setter, getter, Opcodes.ALOAD, Opcodes.ASTORE, false, false);
 	}
 
+	ClassMap(Class<?> internal, String setter, String getter, Class<?> owner) {
+		this.internal = internal;
+		this.setter = setter;
+		this.getter = getter;
+		this.load = Opcodes.ALOAD;
+		this.store = Opcodes.ASTORE;
+		this.passClass = false;
+		this.tryBox = false;
+		this.owner = Type.getInternalName(owner);
+	}
+
 	static {
 		for (var v : values()) {
 			intern.put(v.internal, v);
 		}
 	}
 
+	/** @return The opcode pushing the zero or null of the class. */
+	public int zero() {
+		return switch (load) {
+			case Opcodes.ILOAD -> Opcodes.ICONST_0;
+			case Opcodes.LLOAD -> Opcodes.LCONST_0;
+			case Opcodes.FLOAD -> Opcodes.FCONST_0;
+			case Opcodes.DLOAD -> Opcodes.DCONST_0;
+			default -> Opcodes.ACONST_NULL;
+		};
+	}
+
+	/** Boxes the value on the stack if primitive. */
+	public void box(MethodVisitor mv) {
+		if (!internal.isPrimitive() || internal == void.class) {
+			return;
+		}
+		var boxed = MethodType.methodType(internal).wrap().returnType();
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(boxed), "valueOf",
+				"(" + internal.descriptorString() + ")" + boxed.descriptorString(), false);
+	}
+
+	/** Unboxes or casts the object on the stack into the class. */
+	public void unbox(MethodVisitor mv, Class<?> clazz) {
+		if (!internal.isPrimitive() || internal == void.class) {
+			if (clazz != Object.class) {
+				mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(clazz));
+			}
+			return;
+		}
+		var boxed = MethodType.methodType(internal).wrap().returnType();
+		mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(boxed));
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(boxed), internal.getName() + "Value",
+				"()" + internal.descriptorString(), false);
+	}
+
 	public static ClassMap findMapper(Class<?> clazz) {
 		return intern.getOrDefault(clazz, VOID);
 	}
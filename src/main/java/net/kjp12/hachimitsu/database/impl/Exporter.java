@@ -0,0 +1,368 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.impl;// Created 2026-19-10T21:10:05
+
+import net.kjp12.hachimitsu.database.api.ExportFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Writes rows straight from the result set onto a channel, without mapping.
+ * <p>
+ * Values are read with the primitive getters where possible and encoded by
+ * hand into a direct buffer reused per thread, as such, nothing is allocated
+ * per row aside of the text the driver hands over. Binary is streamed through
+ * a reusable chunk, keeping memory constant regardless of the size of the
+ * export.
+ *
+ * @author KJP12
+ * @since ${version}
+ * @see ExportFormat
+ **/
+final class Exporter {
+	private static final int CAPACITY = 64 * 1024, CHUNK = 8 * 1024;
+	private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal
+			.withInitial(() -> ByteBuffer.allocateDirect(CAPACITY));
+	private static final ThreadLocal<byte[]> CHUNKS = ThreadLocal.withInitial(() -> new byte[CHUNK]);
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e',
+			'f' };
+
+	private final ClassMap[] columns;
+	private final boolean csv;
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer = BUFFERS.get();
+	private final byte[] chunk = CHUNKS.get();
+	/** Whether the header has been written, as chunked calls write many sets. */
+	private boolean headed;
+
+	/**
+	 * @param columns The mappers of the selected columns in order.
+	 * @param format  The format to write in.
+	 * @param channel The channel to write to, left open.
+	 */
+	Exporter(ClassMap[] columns, ExportFormat format, WritableByteChannel channel) {
+		this.columns = columns;
+		this.csv = format == ExportFormat.CSV;
+		this.channel = channel;
+	}
+
+	/**
+	 * Writes every row of the result set.
+	 *
+	 * @return The amount of rows written.
+	 */
+	long write(ResultSet set) throws SQLException, IOException {
+		buffer.clear();
+		if (csv && !headed) {
+			headed = true;
+			header(set.getMetaData());
+		}
+		long rows = 0L;
+		while (set.next()) {
+			for (int c = 0; c < columns.length; c++) {
+				if (!csv) {
+					binary(set, c + 1, columns[c]);
+					continue;
+				}
+				if (c != 0) {
+					ensure(1);
+					buffer.put((byte) ',');
+				}
+				csv(set, c + 1, columns[c]);
+			}
+			if (csv) {
+				ensure(2);
+				buffer.put((byte) '\r').put((byte) '\n');
+			}
+			rows++;
+		}
+		flush();
+		return rows;
+	}
+
+	private void header(ResultSetMetaData meta) throws SQLException, IOException {
+		for (int c = 1; c <= columns.length; c++) {
+			if (c != 1) {
+				ensure(1);
+				buffer.put((byte) ',');
+			}
+			quoted(meta.getColumnLabel(c));
+		}
+		ensure(2);
+		buffer.put((byte) '\r').put((byte) '\n');
+	}
+
+	private void csv(ResultSet set, int column, ClassMap mapper) throws SQLException, IOException {
+		switch (mapper) {
+			case BOOLEAN -> {
+				boolean value = set.getBoolean(column);
+				if (!set.wasNull()) {
+					ascii(value ? "true" : "false");
+				}
+			}
+			case BYTE, SHORT, INT, LONG -> {
+				long value = set.getLong(column);
+				if (!set.wasNull()) {
+					decimal(value);
+				}
+			}
+			case FLOAT -> {
+				float value = set.getFloat(column);
+				if (!set.wasNull()) {
+					ascii(Float.toString(value));
+				}
+			}
+			case DOUBLE -> {
+				double value = set.getDouble(column);
+				if (!set.wasNull()) {
+					ascii(Double.toString(value));
+				}
+			}
+			case INPUT_STREAM, BYTE_BUFFER, CHANNEL, FILE_REGION, SINK -> bytes(set, column);
+			default -> {
+				var value = set.getString(column);
+				if (value != null) {
+					quoted(value);
+				}
+			}
+		}
+	}
+
+	private void binary(ResultSet set, int column, ClassMap mapper) throws SQLException, IOException {
+		ensure(12);
+		switch (mapper) {
+			case BOOLEAN -> {
+				boolean value = set.getBoolean(column);
+				if (!set.wasNull()) {
+					buffer.putInt(1).put((byte) (value ? 1 : 0));
+					return;
+				}
+			}
+			case BYTE -> {
+				byte value = set.getByte(column);
+				if (!set.wasNull()) {
+					buffer.putInt(Byte.BYTES).put(value);
+					return;
+				}
+			}
+			case SHORT -> {
+				short value = set.getShort(column);
+				if (!set.wasNull()) {
+					buffer.putInt(Short.BYTES).putShort(value);
+					return;
+				}
+			}
+			case INT -> {
+				int value = set.getInt(column);
+				if (!set.wasNull()) {
+					buffer.putInt(Integer.BYTES).putInt(value);
+					return;
+				}
+			}
+			case LONG -> {
+				long value = set.getLong(column);
+				if (!set.wasNull()) {
+					buffer.putInt(Long.BYTES).putLong(value);
+					return;
+				}
+			}
+			case FLOAT -> {
+				float value = set.getFloat(column);
+				if (!set.wasNull()) {
+					buffer.putInt(Float.BYTES).putFloat(value);
+					return;
+				}
+			}
+			case DOUBLE -> {
+				double value = set.getDouble(column);
+				if (!set.wasNull()) {
+					buffer.putInt(Double.BYTES).putDouble(value);
+					return;
+				}
+			}
+			case INPUT_STREAM, BYTE_BUFFER, CHANNEL, FILE_REGION, SINK -> {
+				bytes(set, column);
+				return;
+			}
+			default -> {
+				var value = set.getString(column);
+				if (value != null) {
+					buffer.putInt(utf8Length(value));
+					utf8(value, false);
+					return;
+				}
+			}
+		}
+		buffer.putInt(-1);
+	}
+
+	/**
+	 * Streams the binary column as hexadecimal, or as chunks prefixed by their
+	 * length when binary.
+	 */
+	private void bytes(ResultSet set, int column) throws SQLException, IOException {
+		try (var in = set.getBinaryStream(column)) {
+			if (in == null) {
+				if (!csv) {
+					ensure(4);
+					buffer.putInt(-1);
+				}
+				return;
+			}
+			for (int n; (n = in.read(chunk)) >= 0;) {
+				if (csv) {
+					for (int i = 0; i < n; i++) {
+						ensure(2);
+						buffer.put(HEX[chunk[i] >> 4 & 0xF]).put(HEX[chunk[i] & 0xF]);
+					}
+				} else if (n > 0) {
+					ensure(4);
+					buffer.putInt(n);
+					for (int off = 0, length; off < n; off += length) {
+						ensure(1);
+						length = Math.min(buffer.remaining(), n - off);
+						buffer.put(chunk, off, length);
+					}
+				}
+			}
+			if (!csv) {
+				ensure(4);
+				buffer.putInt(0);
+			}
+		}
+	}
+
+	/** Writes the text, quoted if it contains anything that must be escaped. */
+	private void quoted(String value) throws IOException {
+		boolean quote = value.isEmpty();
+		for (int i = 0, l = value.length(); i < l && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+		}
+		if (quote) {
+			ensure(1);
+			buffer.put((byte) '"');
+		}
+		utf8(value, quote);
+		if (quote) {
+			ensure(1);
+			buffer.put((byte) '"');
+		}
+	}
+
+	private void ascii(String value) throws IOException {
+		for (int i = 0, l = value.length(); i < l; i++) {
+			ensure(1);
+			buffer.put((byte) value.charAt(i));
+		}
+	}
+
+	/** Writes the value in decimal without allocating. */
+	private void decimal(long value) throws IOException {
+		ensure(20);
+		// Negated to handle the minimum value, as the negative range is larger.
+		if (value < 0L) {
+			buffer.put((byte) '-');
+		} else {
+			value = -value;
+		}
+		int start = buffer.position();
+		do {
+			buffer.put((byte) ('0' - value % 10L));
+			value /= 10L;
+		} while (value != 0L);
+		for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+			byte swap = buffer.get(i);
+			buffer.put(i, buffer.get(j));
+			buffer.put(j, swap);
+		}
+	}
+
+	/**
+	 * Encodes the text as UTF-8, replacing unpaired surrogates with
+	 * <code>?</code>.
+	 *
+	 * @param quotes Whether to double every quote.
+	 */
+	private void utf8(String value, boolean quotes) throws IOException {
+		for (int i = 0, l = value.length(); i < l; i++) {
+			char c = value.charAt(i);
+			ensure(4);
+			if (c < 0x80) {
+				if (quotes && c == '"') {
+					buffer.put((byte) '"');
+				}
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < l && Character.isLowSurrogate(value.charAt(i + 1))) {
+					int point = Character.toCodePoint(c, value.charAt(++i));
+					buffer.put((byte) (0xF0 | point >> 18)).put((byte) (0x80 | point >> 12 & 0x3F))
+							.put((byte) (0x80 | point >> 6 & 0x3F)).put((byte) (0x80 | point & 0x3F));
+				} else {
+					buffer.put((byte) '?');
+				}
+			} else {
+				buffer.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+			}
+		}
+	}
+
+	/**
+	 * @return The length of the text once encoded by
+	 *         {@link #utf8(String, boolean)}.
+	 */
+	private static int utf8Length(String value) {
+		int length = 0;
+		for (int i = 0, l = value.length(); i < l; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < l && Character.isLowSurrogate(value.charAt(i + 1))) {
+					i++;
+					length += 4;
+				} else {
+					length++;
+				}
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
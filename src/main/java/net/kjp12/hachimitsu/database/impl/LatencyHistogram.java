@@ -0,0 +1,99 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.impl;// Created 2026-19-10T11:02:37
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of recent latencies in nanoseconds.
+ * <p>
+ * Every power of two is split into {@link #SUB_BUCKETS four} linear buckets,
+ * giving a worst case error of 25%. Once {@link #WINDOW} samples have been
+ * recorded, every bucket is halved, biasing the percentiles towards recent
+ * samples.
+ *
+ * @author KJP12
+ * @since ${version}
+ **/
+public final class LatencyHistogram {
+	private static final int SUB_BITS = 2, SUB_BUCKETS = 1 << SUB_BITS, WINDOW = 1024;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+	private volatile long count;
+
+	public void record(long nanos) {
+		buckets.getAndIncrement(index(Math.max(nanos, 1L)));
+		// Racy increment is fine; it only decides when to decay.
+		if (++count >= WINDOW) {
+			decay();
+		}
+	}
+
+	/** @return The amount of samples currently within the window. */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * @param percentile The percentile to look up, between 0 and 1.
+	 * @return The upper bound of the bucket containing the percentile, or
+	 *         {@link Long#MAX_VALUE} if nothing was recorded.
+	 */
+	public long percentile(double percentile) {
+		long total = 0;
+		for (int i = 0, l = buckets.length(); i < l; i++) {
+			total += buckets.get(i);
+		}
+		long target = (long) Math.ceil(total * percentile), seen = 0;
+		for (int i = 0, l = buckets.length(); i < l; i++) {
+			seen += buckets.get(i);
+			if (seen >= target && seen != 0) {
+				return upper(i);
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	private synchronized void decay() {
+		if (count < WINDOW) {
+			return;
+		}
+		long total = 0;
+		for (int i = 0, l = buckets.length(); i < l; i++) {
+			long v;
+			do {
+				v = buckets.get(i);
+			} while (!buckets.compareAndSet(i, v, v >>> 1));
+			total += v >>> 1;
+		}
+		count = total;
+	}
+
+	private static int index(long nanos) {
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent < SUB_BITS) {
+			return (int) nanos;
+		}
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) ((nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	private static long upper(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BITS - 1, sub = index & (SUB_BUCKETS - 1);
+		return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+}
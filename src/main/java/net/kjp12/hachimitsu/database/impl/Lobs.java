@@ -0,0 +1,256 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.impl;// Created 2026-19-10T18:36:12
+
+import net.kjp12.hachimitsu.database.api.FileRegion;
+import net.kjp12.hachimitsu.database.api.SqlConnectionProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+
+/**
+ * Accessors of large binary columns, called by generated handlers in place of
+ * the statement's and result set's own.
+ * <p>
+ * JDBC only exposes binary columns as streams, as such, a copy cannot be
+ * avoided entirely. Instead, columns are copied through a reusable chunk per
+ * thread, never holding the whole value on the heap. Columns mapped as a
+ * {@link WritableByteChannel} are written into the channel the provider
+ * {@link SqlConnectionProvider#sink(String) supplies} while the row is current,
+ * transferred directly when it is a {@link FileChannel}.
+ *
+ * @author KJP12
+ * @since ${version}
+ * @see ClassMap
+ **/
+public final class Lobs {
+	private static final int CHUNK = 64 * 1024;
+	private static final ThreadLocal<byte[]> CHUNKS = ThreadLocal.withInitial(() -> new byte[CHUNK]);
+
+	private Lobs() {
+	}
+
+	/** Binds the remaining bytes of the buffer, leaving its position as is. */
+	public static void setBuffer(PreparedStatement statement, int index, ByteBuffer buffer) throws SQLException {
+		if (buffer == null) {
+			statement.setNull(index, Types.BLOB);
+			return;
+		}
+		statement.setBinaryStream(index, new BufferStream(buffer.duplicate()), buffer.remaining());
+	}
+
+	/** Binds the rest of the channel, of an unknown length. */
+	public static void setChannel(PreparedStatement statement, int index, ReadableByteChannel channel)
+			throws SQLException {
+		if (channel == null) {
+			statement.setNull(index, Types.BLOB);
+			return;
+		}
+		statement.setBinaryStream(index, Channels.newInputStream(channel));
+	}
+
+	/** Binds the region, read positionally from its channel. */
+	public static void setRegion(PreparedStatement statement, int index, FileRegion region) throws SQLException {
+		if (region == null) {
+			statement.setNull(index, Types.BLOB);
+			return;
+		}
+		statement.setBinaryStream(index, new RegionStream(region), region.size());
+	}
+
+	/** Sinks are only ever read into. */
+	public static void setSink(PreparedStatement statement, int index, WritableByteChannel sink)
+			throws SQLException {
+		throw new SQLFeatureNotSupportedException("Unable to bind a sink at " + index);
+	}
+
+	/**
+	 * Writes the column into the provider's sink, leaving the sink open.
+	 *
+	 * @param name The name of the column passed onto the provider.
+	 * @return The sink written to, or null if the column is null, in which case
+	 *         no sink is requested.
+	 */
+	public static WritableByteChannel getSink(ResultSet set, int column, SqlConnectionProvider provider,
+			String name) throws SQLException {
+		var stream = set.getBinaryStream(column);
+		if (stream == null) {
+			return null;
+		}
+		try (stream) {
+			var sink = provider.sink(name);
+			if (sink instanceof FileChannel file) {
+				// transferFrom leaves the channel's position as is.
+				var source = Channels.newChannel(stream);
+				long position = file.position();
+				for (long read; (read = file.transferFrom(source, position, CHUNK)) > 0L;) {
+					position += read;
+				}
+				file.position(position);
+				return sink;
+			}
+			var chunk = CHUNKS.get();
+			for (int read; (read = stream.read(chunk)) >= 0;) {
+				var buffer = ByteBuffer.wrap(chunk, 0, read);
+				while (buffer.hasRemaining()) {
+					sink.write(buffer);
+				}
+			}
+			return sink;
+		} catch (IOException ioe) {
+			throw new SQLException("Unable to write column " + column, ioe);
+		}
+	}
+
+	/**
+	 * Reads the column into a temporary file, mapped read-only. The file is
+	 * deleted before returning, leaving only the mapping.
+	 */
+	public static ByteBuffer getBuffer(ResultSet set, int column) throws SQLException {
+		var region = getRegion(set, column);
+		if (region == null) {
+			return null;
+		}
+		try (var channel = region.channel()) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0L, region.size());
+		} catch (IOException ioe) {
+			throw new SQLException("Unable to map column " + column, ioe);
+		}
+	}
+
+	/**
+	 * Gets the column as a channel, only valid while the row is current, as such,
+	 * must be consumed within the proxy.
+	 */
+	public static ReadableByteChannel getChannel(ResultSet set, int column) throws SQLException {
+		var stream = set.getBinaryStream(column);
+		return stream == null ? null : Channels.newChannel(stream);
+	}
+
+	/**
+	 * Reads the column into a temporary file, deleted once the region's channel is
+	 * closed.
+	 */
+	public static FileRegion getRegion(ResultSet set, int column) throws SQLException {
+		var stream = set.getBinaryStream(column);
+		if (stream == null) {
+			return null;
+		}
+		FileChannel channel = null;
+		try (stream) {
+			channel = FileChannel.open(Files.createTempFile("hachimitsu", ".lob"), StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+			var chunk = CHUNKS.get();
+			long size = 0L;
+			for (int read; (read = stream.read(chunk)) >= 0;) {
+				var buffer = ByteBuffer.wrap(chunk, 0, read);
+				while (buffer.hasRemaining()) {
+					size += channel.write(buffer);
+				}
+			}
+			return new FileRegion(channel, 0L, size);
+		} catch (IOException ioe) {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException suppressed) {
+					ioe.addSuppressed(suppressed);
+				}
+			}
+			throw new SQLException("Unable to read column " + column, ioe);
+		}
+	}
+
+	private static final class BufferStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		BufferStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+	private static final class RegionStream extends InputStream {
+		private final FileChannel channel;
+		private long position;
+		private final long end;
+
+		RegionStream(FileRegion region) {
+			this.channel = region.channel();
+			this.position = region.position();
+			this.end = region.position() + region.size();
+		}
+
+		@Override
+		public int read() throws IOException {
+			var b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (position >= end) {
+				return -1;
+			}
+			int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+			if (read > 0) {
+				position += read;
+			}
+			return read;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(end - position, Integer.MAX_VALUE);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+
+package net.kjp12.hachimitsu.database.impl;// Created 2026-19-10T21:48:30
+
+import net.kjp12.hachimitsu.database.api.StatementCache;
+
+import java.util.Arrays;
+
+/**
+ * Lock-free bounded memo of a single provider method, shared by every handler
+ * of a {@link StatementCache} calling it with <code>#</code>.
+ * <p>
+ * Each argument may be held in either of two slots chosen by its hash, a
+ * colliding argument overwriting the second once both are taken. Arguments are
+ * compared by {@link Object#equals(Object) equality}, which is identity unless
+ * overridden, as such, arguments mutated after being memoized must be
+ * {@link #invalidate() invalidated}. Entries are tagged with the generation
+ * they were computed in, discarding calls that raced an invalidation.
+ *
+ * @author KJP12
+ * @since ${version}
+ * @see C0
+ **/
+public final class Memo {
+	private static final int BITS = 8, CAPACITY = 1 << BITS;
+
+	private final Entry[] table = new Entry[CAPACITY];
+	private volatile int generation;
+
+	/**
+	 * @return The memoized result, or a {@link Miss} to {@link Miss#put(Object)
+	 *         put} the result through once called.
+	 */
+	public Object get(Object key) {
+		int generation = this.generation, hash = hash(key);
+		var entry = table[first(hash)];
+		if (entry != null && entry.holds(key, generation)) {
+			return entry.value;
+		}
+		entry = table[second(hash)];
+		if (entry != null && entry.holds(key, generation)) {
+			return entry.value;
+		}
+		return new Miss(this, key, generation);
+	}
+
+	/** Forgets every result, including those of calls still running. */
+	public synchronized void invalidate() {
+		generation++;
+		// Stale entries are already ignored, this only releases them.
+		Arrays.fill(table, null);
+	}
+
+	/**
+	 * Puts the entry in the first slot, unless it holds another live argument.
+	 */
+	private void put(Entry entry) {
+		int hash = hash(entry.key), slot = first(hash);
+		var other = table[slot];
+		if (other != null && other.generation == entry.generation && !other.holds(entry.key, entry.generation)) {
+			slot = second(hash);
+		}
+		table[slot] = entry;
+	}
+
+	private static int hash(Object key) {
+		return key == null ? 0 : key.hashCode();
+	}
+
+	private static int first(int hash) {
+		return (hash ^ hash >>> 16) & CAPACITY - 1;
+	}
+
+	private static int second(int hash) {
+		// Fibonacci hashing, taking the upper bits as to be independent of the first.
+		return hash * 0x9E3779B9 >>> 32 - BITS;
+	}
+
+	private record Entry(Object key, Object value, int generation) {
+		boolean holds(Object key, int generation) {
+			return this.generation == generation && (this.key == key || key != null && key.equals(this.key));
+		}
+	}
+
+	/**
+	 * Result of a call yet to be memoized.
+	 */
+	public static final class Miss {
+		private final Memo memo;
+		private final Object key;
+		private final int generation;
+
+		private Miss(Memo memo, Object key, int generation) {
+			this.memo = memo;
+			this.key = key;
+			this.generation = generation;
+		}
+
+		/** @return The argument the method is to be called with. */
+		public Object key() {
+			return key;
+		}
+
+		/**
+		 * Memoizes the result unless invalidated since the miss.
+		 *
+		 * @return The result.
+		 */
+		public Object put(Object value) {
+			if (memo.generation == generation) {
+				memo.put(new Entry(key, value, generation));
+			}
+			return value;
+		}
+	}
+}
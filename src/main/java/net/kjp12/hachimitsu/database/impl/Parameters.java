@@ -0,0 +1,344 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.impl;// Created 2026-19-10T15:02:37
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Parameters captured from a handler's binding, allowing the statement to be
+ * chosen after the values are known.
+ * <p>
+ * Collection parameters of the {@link Variant#expansions variant} are expanded
+ * into as many placeholders as the power of two bucket they fall in, padded by
+ * repeating the last value, bounding the amount of distinct statements to
+ * {@value #BUCKETS} per collection. Past the largest bucket, collections of
+ * {@link Variant#chunked chunked} variants are bound in {@link #chunks()
+ * chunks} of distinct values, each executing the same statement.
+ * <p>
+ * Collections bound as arrays are captured as is, only being made into an
+ * array once replayed, as creating the array requires the connection.
+ *
+ * @author KJP12
+ * @since ${version}
+ **/
+public final class Parameters implements InvocationHandler {
+	private static final ClassLoader LOADER = Parameters.class.getClassLoader();
+	private static final Class<?>[] STATEMENT = { PreparedStatement.class };
+	/** Amount of buckets, the largest holding {@value #CAP} values. */
+	static final int BUCKETS = 10, CAP = 1 << (BUCKETS - 1);
+	/** Stands in for the setter of collections bound as arrays. */
+	private static final Method ARRAY;
+
+	static {
+		try {
+			ARRAY = StatementHandler.class.getDeclaredMethod("array", PreparedStatement.class, int.class, Object.class);
+		} catch (NoSuchMethodException nsme) {
+			throw new ExceptionInInitializerError(nsme);
+		}
+	}
+
+	private final ArrayList<Method> setters = new ArrayList<>();
+	/** Arguments of each setter as called, for replaying. */
+	private final ArrayList<Object[]> arguments = new ArrayList<>();
+	/** Value bound by each setter, being null for <code>setNull</code>. */
+	private final ArrayList<Object> values = new ArrayList<>();
+	private int[] buckets;
+	/** Elements and chunks of each expanded collection as of the last expansion. */
+	private Object[][] elements;
+	private int[] chunks;
+	/** The chunk being bound, indexing every combination of chunks. */
+	private int chunk;
+
+	private Parameters() {
+	}
+
+	/**
+	 * Captures the parameters the handler would bind for the record.
+	 */
+	static Parameters capture(StatementHandler handler, Object record) throws SQLException {
+		var parameters = new Parameters();
+		handler.bind(record, (PreparedStatement) Proxy.newProxyInstance(LOADER, STATEMENT, parameters));
+		return parameters;
+	}
+
+	/**
+	 * @return The parameters capturing onto the statement, or null if the
+	 *         statement isn't capturing.
+	 */
+	static Parameters capturing(PreparedStatement statement) {
+		return Proxy.isProxyClass(statement.getClass())
+				&& Proxy.getInvocationHandler(statement) instanceof Parameters parameters ? parameters : null;
+	}
+
+	/** Captures the collection to be bound as an array once replayed. */
+	void array(int index, Object value) {
+		setters.add(ARRAY);
+		arguments.add(new Object[] { index, value });
+		values.add(value);
+	}
+
+	/**
+	 * Gets the SQL for the captured parameters, expanding the placeholders of each
+	 * collection to its bucket.
+	 *
+	 * @throws IllegalArgumentException if a collection exceeds the largest bucket
+	 *                                  while the variant isn't chunked.
+	 */
+	String expand(Variant variant) {
+		var expansions = variant.expansions;
+		if (expansions == null) {
+			return variant.sql;
+		}
+		buckets = new int[expansions.length];
+		elements = new Object[expansions.length][];
+		chunks = new int[expansions.length];
+		chunk = 0;
+		var sql = new StringBuilder(variant.sql);
+		// Backwards as to not move the markers yet to be expanded.
+		for (int e = expansions.length - 1; e >= 0; e--) {
+			var values = elements[e] = elements(value(expansions[e]));
+			if (values.length > CAP) {
+				if (!variant.chunked) {
+					throw new IllegalArgumentException("Collection of " + values.length + " values exceeds " + CAP
+							+ " while unable to chunk " + variant);
+				}
+				// Distinct, as to never match a row in more than one chunk.
+				values = elements[e] = new LinkedHashSet<>(Arrays.asList(values)).toArray();
+			}
+			chunks[e] = Math.max((values.length + CAP - 1) / CAP, 1);
+			int bucket = buckets[e] = chunks[e] > 1 ? CAP : bucket(values.length);
+			if (bucket > 1) {
+				sql.insert(variant.markers[e] + 1, ",?".repeat(bucket - 1));
+			}
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * @return The amount of chunks to bind as expanded by the last call to
+	 *         {@link #expand(Variant)}, being every combination of the chunks of
+	 *         each collection.
+	 */
+	int chunks() {
+		int total = 1;
+		if (chunks != null) {
+			for (int count : chunks) {
+				total *= count;
+			}
+		}
+		return total;
+	}
+
+	/** Selects the chunk to bind on the following replays. */
+	void chunk(int chunk) {
+		this.chunk = chunk;
+	}
+
+	/**
+	 * Binds the captured parameters onto the statement, as expanded by the last
+	 * call to {@link #expand(Variant)}, binding the collections of the selected
+	 * chunk.
+	 */
+	void replay(Variant variant, PreparedStatement statement) throws SQLException {
+		var expansions = variant.expansions;
+		for (int p = 0, l = setters.size(); p < l; p++) {
+			var args = arguments.get(p);
+			int index = (Integer) args[0], shift = 0, e = 0;
+			for (; expansions != null && e < expansions.length && expansions[e] < index; e++) {
+				shift += buckets[e] - 1;
+			}
+			if (expansions != null && e < expansions.length && expansions[e] == index) {
+				var elements = this.elements[e];
+				index += shift;
+				if (elements.length == 0) {
+					// Nothing may ever equal null, allowing an empty list to match nothing.
+					statement.setNull(index, Types.NULL);
+					continue;
+				}
+				int bucket = buckets[e], from = chunkOf(e) * CAP, last = Math.min(from + bucket, elements.length) - 1;
+				for (int b = 0; b < bucket; b++) {
+					statement.setObject(index + b, elements[Math.min(from + b, last)]);
+				}
+				continue;
+			}
+			if (shift != 0) {
+				args = args.clone();
+				args[0] = index + shift;
+			}
+			var setter = setters.get(p);
+			if (setter == ARRAY) {
+				StatementHandler.array(statement, (Integer) args[0], args[1]);
+				continue;
+			}
+			try {
+				setter.invoke(statement, args);
+			} catch (InvocationTargetException ite) {
+				if (ite.getCause() instanceof SQLException sql) {
+					throw sql;
+				}
+				throw new IllegalStateException("Unable to bind " + Arrays.toString(args) + " onto " + statement, ite);
+			} catch (IllegalAccessException iae) {
+				throw new AssertionError(iae);
+			}
+		}
+	}
+
+	/**
+	 * @return The captured values ordered by their index, as bound before any
+	 *         expansion.
+	 */
+	public List<Object> values() {
+		var ordered = new TreeMap<Integer, Object>();
+		for (int p = 0, l = arguments.size(); p < l; p++) {
+			ordered.put((Integer) arguments.get(p)[0], values.get(p));
+		}
+		return new ArrayList<>(ordered.values());
+	}
+
+	/**
+	 * Whether both have captured the same values at the same indices, allowing
+	 * identical calls of a handler to be found.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Parameters other) || !setters.equals(other.setters)) {
+			return false;
+		}
+		for (int p = 0, l = arguments.size(); p < l; p++) {
+			if (!Arrays.deepEquals(arguments.get(p), other.arguments.get(p))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int p = 0, l = arguments.size(); p < l; p++) {
+			hash = 31 * (31 * hash + setters.get(p).hashCode()) + Arrays.deepHashCode(arguments.get(p));
+		}
+		return hash;
+	}
+
+	/** @return The chunk of the collection within the selected chunk. */
+	private int chunkOf(int expansion) {
+		int chunk = this.chunk;
+		for (int e = chunks.length - 1; e > expansion; e--) {
+			chunk /= chunks[e];
+		}
+		return chunk % chunks[expansion];
+	}
+
+	private Object value(int index) {
+		for (int p = arguments.size() - 1; p >= 0; p--) {
+			if ((Integer) arguments.get(p)[0] == index) {
+				return values.get(p);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) {
+		var name = method.getName();
+		if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+			setters.add(method);
+			arguments.add(args);
+			// The type of a null is only kept for replaying.
+			values.add(name.equals("setNull") ? null : args[1]);
+			return null;
+		}
+		return switch (name) {
+			case "clearParameters" -> {
+				setters.clear();
+				arguments.clear();
+				values.clear();
+				yield null;
+			}
+			case "equals" -> proxy == args[0];
+			case "hashCode" -> System.identityHashCode(proxy);
+			case "toString" -> toString();
+			default -> throw new UnsupportedOperationException(method + " is not supported while capturing.");
+		};
+	}
+
+	/** @return The smallest power of two that can hold the size. */
+	static int bucket(int size) {
+		return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+	}
+
+	/**
+	 * Whether the class will be treated as a collection of values, rather than a
+	 * single value. Byte arrays are always treated as binary.
+	 */
+	public static boolean isCollection(Class<?> clazz) {
+		return Collection.class.isAssignableFrom(clazz) || clazz.isArray() && clazz != byte[].class;
+	}
+
+	static int size(Object value) {
+		if (value == null) {
+			return 0;
+		}
+		return value instanceof Collection<?> c ? c.size() : Array.getLength(value);
+	}
+
+	static Object[] elements(Object value) {
+		if (value == null) {
+			return new Object[0];
+		}
+		if (value instanceof Collection<?> c) {
+			return c.toArray();
+		}
+		if (value instanceof Object[] a) {
+			return a;
+		}
+		// Primitive arrays require boxing.
+		var elements = new Object[Array.getLength(value)];
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = Array.get(value, i);
+		}
+		return elements;
+	}
+
+	@Override
+	public String toString() {
+		var builder = new StringBuilder("Parameters{");
+		for (int p = 0, l = arguments.size(); p < l; p++) {
+			builder.append(arguments.get(p)[0]).append('=').append(values.get(p)).append(", ");
+		}
+		if (!arguments.isEmpty()) {
+			builder.setLength(builder.length() - 2);
+		}
+		return builder.append(", buckets=").append(Arrays.toString(buckets)).append(", chunks=")
+				.append(Arrays.toString(chunks)).append('}').toString();
+	}
+}
@@ -0,0 +1,90 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.impl;// Created 2026-19-10T09:24:52
+
+import net.kjp12.hachimitsu.database.api.BuiltinDialect;
+import net.kjp12.hachimitsu.database.api.Dialect;
+import net.kjp12.hachimitsu.database.api.Plan;
+import net.kjp12.hachimitsu.database.api.SlowQueryLog;
+import net.kjp12.hachimitsu.database.api.SqlConnectionProvider;
+import net.kjp12.hachimitsu.database.api.StatementBudget;
+import net.kjp12.hachimitsu.database.api.StatementCache;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runtime settings shared between every handler of a single
+ * {@link StatementCache}.
+ *
+ * @author KJP12
+ * @since ${version}
+ **/
+public final class Settings {
+	/** Shared timer for deadlines and hedging. */
+	static final ScheduledThreadPoolExecutor SCHEDULER;
+
+	static {
+		SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+			var thread = new Thread(r, "StatementCache Scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		SCHEDULER.setRemoveOnCancelPolicy(true);
+	}
+
+	/** Executor used for running split partitions and hedged requests. */
+	public volatile Executor executor = ForkJoinPool.commonPool();
+
+	/** Default deadline in milliseconds, 0 to disable. */
+	public volatile long timeout;
+
+	/** Percentile of recent latency after which a hedged request is sent. */
+	public volatile double hedge;
+	/** Provider to send hedged requests to. Null to use the handler's own. */
+	public volatile SqlConnectionProvider replica;
+
+	/** Dialect of the provider, used for preparing statements. */
+	public volatile Dialect dialect = BuiltinDialect.STANDARD;
+
+	/** Estimated rows from which scans are reported, negative to not explain. */
+	public volatile long explain = -1L;
+	/** Receives every captured plan. Null to only keep the plans. */
+	public volatile Consumer<Plan> plans;
+
+	/** Log of slow and sampled queries. Null to not log. */
+	public volatile SlowQueryLog slowLog;
+
+	/** Maximum amount of statements pooled per handler and SQL string. */
+	public volatile int statements = Runtime.getRuntime().availableProcessors();
+	/** Milliseconds after which surplus idle statements are closed. */
+	public volatile long statementIdle = 60_000L;
+	/** Budget shared with other caches. Null to not count against any. */
+	public volatile StatementBudget budget;
+
+	/** Rows read per batch when pipelining mapping, 0 to map while reading. */
+	public volatile int pipeline;
+	/** Maximum amount of batches being mapped at once when pipelining. */
+	public volatile int pipelineWorkers = Runtime.getRuntime().availableProcessors();
+
+	/** Priority of the cache's queries within the provider's limiter. */
+	public volatile int priority;
+
+	/** Copies shared results onto attached calls. Null to not deduplicate. */
+	public volatile UnaryOperator<Object> singleFlight;
+}
@@ -14,12 +14,40 @@
 
 package net.kjp12.hachimitsu.database.impl;// Created 2021-14-06T15:09:52
 
+import net.kjp12.hachimitsu.database.api.ConnectionPool;
 import net.kjp12.hachimitsu.database.api.DatabaseException;
+import net.kjp12.hachimitsu.database.api.DatabaseRecord;
+import net.kjp12.hachimitsu.database.api.ExportFormat;
+import net.kjp12.hachimitsu.database.api.Plan;
+import net.kjp12.hachimitsu.database.api.SlowQueryLog;
 import net.kjp12.hachimitsu.database.api.SqlConnectionProvider;
+import net.kjp12.hachimitsu.database.api.annotation.Shape;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
 
 /**
  * Intermediate statement handler class.
@@ -28,35 +56,985 @@ import java.sql.Statement;
  * @since ${version}
  **/
 public abstract class StatementHandler {
+	/** Amount of samples required before hedging is considered. */
+	private static final int HEDGE_SAMPLES = 64;
+	/** Slots of the intern table, a power of two. */
+	private static final int INTERN_SLOTS = 1024;
+
 	protected final String statementRaw;
 	protected final SqlConnectionProvider provider;
+	protected final Settings settings;
+	protected final Variant variant;
+	protected final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicBoolean explained = new AtomicBoolean();
+	/** Strings of interned columns, allocated on first use. */
+	private String[] interned;
 	protected PreparedStatement statement;
+	/** Calls currently being fetched, keyed by their bound parameters. */
+	private final ConcurrentHashMap<Parameters, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+	/** Statements of the handler and of expanded collections, keyed by SQL. */
+	private final StatementPools pools;
 
-	protected StatementHandler(SqlConnectionProvider provider, String statementRaw) {
+	protected StatementHandler(SqlConnectionProvider provider, Settings settings, Variant variant) {
 		this.provider = provider;
-		this.statementRaw = statementRaw;
+		this.settings = settings;
+		this.variant = variant;
+		this.statementRaw = variant.sql;
+		this.pools = new StatementPools(provider, settings);
+	}
+
+	/**
+	 * Gets the instance equal to the string last seen within its slot, otherwise
+	 * replacing it. Being direct-mapped, the table never grows, and colliding
+	 * values only evict each other. Races only lose a replacement, as strings are
+	 * safely published.
+	 *
+	 * @param string The string read from the column.
+	 * @return An equal string, shared with prior rows where possible.
+	 * @see net.kjp12.hachimitsu.database.api.annotation.Value#intern()
+	 */
+	protected final String intern(String string) {
+		if (string == null) {
+			return null;
+		}
+		var interned = this.interned;
+		if (interned == null) {
+			this.interned = interned = new String[INTERN_SLOTS];
+		}
+		int slot = string.hashCode() & (INTERN_SLOTS - 1);
+		var existing = interned[slot];
+		if (string.equals(existing)) {
+			return existing;
+		}
+		interned[slot] = string;
+		return string;
+	}
+
+	/** @return The flags of the variant, for binding of shared handlers. */
+	protected final int flags() {
+		return variant.flags;
+	}
+
+	/**
+	 * Binds the values of the record onto the statement.
+	 *
+	 * @param record    The record to bind from.
+	 * @param statement The statement to bind to.
+	 */
+	protected abstract void bind(Object record, PreparedStatement statement) throws SQLException;
+
+	/**
+	 * Maps the current row of the result set.
+	 *
+	 * @param set The result set positioned on the row to map.
+	 * @return The mapped row.
+	 */
+	protected abstract Object map(ResultSet set) throws SQLException;
+
+	/**
+	 * Reads the values the proxy would be called with from the current row, for
+	 * {@link #build(Object[]) building} on another thread.
+	 *
+	 * @param set The result set positioned on the row to read.
+	 * @param row Receives the boxed values in order of the proxy's parameters, or
+	 *            the mapped row alone for counts and existence checks.
+	 * @see Variant#arity
+	 */
+	protected abstract void read(ResultSet set, Object[] row) throws SQLException;
+
+	/**
+	 * Calls the proxy with the values that were {@link #read(ResultSet, Object[])
+	 * read}.
+	 *
+	 * @return The mapped row.
+	 */
+	protected abstract Object build(Object[] row);
+
+	/**
+	 * Maps the result set into the object to complete the record with.
+	 *
+	 * @param set The result set to consume.
+	 * @return The result to pass onto {@link DatabaseRecord#complete(Object)}.
+	 */
+	protected abstract Object collect(ResultSet set) throws SQLException;
+
+	/**
+	 * @param executing Accumulates the nanoseconds spent executing statements.
+	 */
+	public void query(Object record, long[] executing) throws SQLException {
+		var copier = settings.singleFlight;
+		// When shared, the parameters are captured as the key, then replayed in place
+		// of binding the record again.
+		var call = call(record, copier != null);
+		Object result;
+		try {
+			result = copier == null ? fetch(call) : shared(call, copier);
+		} finally {
+			sample(call, executing);
+		}
+		complete(record, result);
+	}
+
+	/**
+	 * Fetches the rows of the record past the mark without completing the record,
+	 * for watching. Never hedged, as both requests would race on the mark.
+	 *
+	 * @param parameters The parameters captured from the record, replayed onto the
+	 *                   statement.
+	 * @param mark       Holds the high-water mark, updated to that of the last
+	 *                   row.
+	 * @param executing  Accumulates the nanoseconds spent executing statements.
+	 * @return The rows past the mark, in ascending order of the watched column.
+	 * @see Variant#watch
+	 */
+	public final Object poll(Object record, Parameters parameters, long[] mark, long[] executing)
+			throws SQLException {
+		var call = new Call(record, parameters, parameters.expand(variant));
+		call.mark = mark[0];
+		try {
+			var result = fetch(call);
+			mark[0] = call.mark;
+			return result;
+		} finally {
+			sample(call, executing);
+		}
+	}
+
+	/**
+	 * Writes the rows of the record straight onto the channel without completing
+	 * the record. Split variants are exported as a single range, as the rows must
+	 * be written in order.
+	 *
+	 * @param executing Accumulates the nanoseconds spent executing statements.
+	 * @return The amount of rows written.
+	 */
+	public final long export(Object record, WritableByteChannel channel, ExportFormat format, long[] executing)
+			throws SQLException, IOException {
+		var call = call(record, false);
+		call.export = new Exporter(variant.columns, format, channel);
+		try {
+			return (Long) (variant.bounds != null
+					? run(call, statement -> range(call, statement, Long.MIN_VALUE, Long.MAX_VALUE))
+					: chunked(call));
+		} catch (UncheckedIOException uio) {
+			throw uio.getCause();
+		} finally {
+			sample(call, executing);
+		}
+	}
+
+	/**
+	 * Adds the time the call spent executing onto the sample, averaged across the
+	 * partitions as they execute in parallel. Nothing is added by a call that
+	 * attached onto an identical call in flight, as it never executed.
+	 */
+	private static void sample(Call call, long[] executing) {
+		executing[0] += call.executing / call.partitions;
+	}
+
+	/**
+	 * Captures the parameters the handler would bind for the record, for finding
+	 * identical records.
+	 */
+	public final Parameters capture(Object record) throws SQLException {
+		return Parameters.capture(this, record);
+	}
+
+	/**
+	 * @param capture Whether the parameters should be captured, to be replayed
+	 *                onto the statement. Always captured when the statement
+	 *                depends on the size of the collections.
+	 */
+	private Call call(Object record, boolean capture) throws SQLException {
+		if (capture || variant.expansions != null) {
+			var parameters = Parameters.capture(this, record);
+			return new Call(record, parameters, parameters.expand(variant));
+		}
+		return new Call(record, null, statementRaw);
+	}
+
+	/**
+	 * Attaches onto an identical call already in flight, otherwise fetching and
+	 * sharing the result with any call that attached in the meantime.
+	 *
+	 * @param call   The call, keyed by its captured parameters.
+	 * @param copier Applied onto the result for each attached call.
+	 */
+	private Object shared(Call call, UnaryOperator<Object> copier) throws SQLException {
+		var key = call.parameters;
+		var flight = new CompletableFuture<Object>();
+		var leader = inflight.putIfAbsent(key, flight);
+		if (leader != null) {
+			try {
+				return copier.apply(leader.join());
+			} catch (CompletionException ce) {
+				if (ce.getCause() instanceof SQLException sql) {
+					throw sql;
+				}
+				throw ce;
+			}
+		}
+		try {
+			var result = fetch(call);
+			flight.complete(result);
+			return result;
+		} catch (Throwable t) {
+			flight.completeExceptionally(t);
+			throw t;
+		} finally {
+			inflight.remove(key, flight);
+		}
 	}
 
-	public abstract void query(Object i);
+	private Object fetch(Call call) throws SQLException {
+		long start = System.nanoTime();
+		Object result;
+		if (variant.bounds != null) {
+			result = split(call);
+		} else if (call.parameters != null && call.parameters.chunks() > 1) {
+			result = chunked(call);
+		} else if (settings.hedge > 0D && variant.watch == 0 && latency.count() >= HEDGE_SAMPLES) {
+			result = hedged(call);
+		} else {
+			result = run(call, statement -> execute(call, statement));
+			latency.record(System.nanoTime() - start);
+		}
+		var log = settings.slowLog;
+		if (log != null) {
+			log(log, call, result, System.nanoTime() - start);
+		}
+		return result;
+	}
 
+	/**
+	 * Executes the statement once per chunk of the call's collections,
+	 * concatenating the rows, or summing the rows written when exporting.
+	 *
+	 * @see Variant#chunked
+	 */
+	private Object chunked(Call call) throws SQLException {
+		var parameters = call.parameters;
+		int chunks = parameters == null ? 1 : parameters.chunks();
+		if (chunks == 1) {
+			return run(call, statement -> execute(call, statement));
+		}
+		var rows = new ArrayList<>();
+		long written = 0L;
+		for (int c = 0; c < chunks; c++) {
+			parameters.chunk(c);
+			var result = run(call, statement -> execute(call, statement));
+			if (call.export != null) {
+				written += (Long) result;
+			} else {
+				rows.addAll((Collection<?>) result);
+			}
+		}
+		return call.export != null ? written : rows;
+	}
+
+	/**
+	 * Logs the call if it was slow or sampled, capturing the parameters only then.
+	 */
+	private void log(SlowQueryLog log, Call call, Object result, long nanos) throws SQLException {
+		boolean slow = nanos >= log.threshold();
+		if (!slow && !log.sample()) {
+			return;
+		}
+		var parameters = call.parameters != null ? call.parameters : Parameters.capture(this, call.record);
+		log.record(new SlowQueryLog.Entry(Instant.now(), call.sql, variant.flags, parameters.values(), call.executing,
+				call.mapping, rows(result), slow));
+	}
+
+	private static int rows(Object result) {
+		if (result instanceof Collection<?> collection) {
+			return collection.size();
+		} else if (result instanceof Optional<?> optional) {
+			return optional.isPresent() ? 1 : 0;
+		}
+		return result == null ? 0 : 1;
+	}
+
+	/**
+	 * Captures the plan of the statement as bound by the record on the executor,
+	 * once per handler. Does nothing unless explaining has been enabled. Never
+	 * fails the query, with any failure being reported within the plan.
+	 *
+	 * @see Variant#plan
+	 */
+	public final void explain(Object record) {
+		long threshold = settings.explain;
+		if (threshold < 0L || explained.get() || !explained.compareAndSet(false, true)) {
+			return;
+		}
+		// Captured now, as the record may change once completed.
+		Parameters parameters;
+		String sql;
+		try {
+			parameters = Parameters.capture(this, record);
+			sql = parameters.expand(variant);
+		} catch (SQLException | RuntimeException e) {
+			plan(statementRaw, List.of("Unable to capture: " + e));
+			return;
+		}
+		settings.executor.execute(() -> {
+			var dialect = settings.dialect;
+			var lines = new ArrayList<String>();
+			try {
+				run(provider, dialect.explain(sql), statement -> {
+					if (variant.bounds != null) {
+						statement.setLong(1, Long.MIN_VALUE);
+						statement.setLong(2, Long.MAX_VALUE);
+					} else if (variant.watch != 0) {
+						statement.setLong(1, Long.MIN_VALUE);
+					}
+					parameters.replay(variant, statement);
+					try (var set = statement.executeQuery()) {
+						var meta = set.getMetaData();
+						int columns = meta.getColumnCount();
+						while (set.next()) {
+							if (columns == 1) {
+								String.valueOf(set.getString(1)).lines().forEach(lines::add);
+								continue;
+							}
+							var line = new StringBuilder();
+							for (int c = 1; c <= columns; c++) {
+								line.append(meta.getColumnLabel(c)).append('=').append(set.getString(c)).append(", ");
+							}
+							line.setLength(line.length() - 2);
+							lines.add(line.toString());
+						}
+					}
+					return null;
+				});
+			} catch (SQLException | RuntimeException e) {
+				lines.add("Unable to explain: " + e);
+			}
+			plan(sql, lines);
+		});
+	}
+
+	/** Reports the plan, finding any full scans and sorts within. */
+	private void plan(String sql, List<String> lines) {
+		var warnings = new ArrayList<String>();
+		settings.dialect.scans(lines, settings.explain, warnings);
+		var plan = variant.plan = new Plan(variant.flags, sql, List.copyOf(lines), List.copyOf(warnings));
+		var listener = settings.plans;
+		if (listener != null) {
+			listener.accept(plan);
+		}
+	}
+
+	/**
+	 * Runs the task on a statement borrowed from the handler's pool, or on the
+	 * cached statement of a borrowed connection when the provider is a
+	 * {@link ConnectionPool}. Once the pool is at its limit or closed, the task
+	 * runs on a fresh statement instead.
+	 */
+	private Object run(Call call, Task task) throws SQLException {
+		if (provider instanceof ConnectionPool pool) {
+			try (var lease = pool.borrow()) {
+				return task.run(lease.prepare(call.sql));
+			}
+		}
+		var pool = pools.get(call.sql);
+		var statement = pool == null ? null : pool.borrow();
+		if (statement == null) {
+			return run(provider, call.sql, task);
+		}
+		try {
+			return task.run(statement);
+		} finally {
+			pool.release(statement);
+		}
+	}
+
+	/**
+	 * Runs the task on a fresh statement from the source, or on the cached
+	 * statement of a borrowed connection when the source is a
+	 * {@link ConnectionPool}. Fresh statements are counted against the budget
+	 * while open.
+	 *
+	 * @throws SQLTransientException if the budget has no room for the statement.
+	 */
+	private Object run(SqlConnectionProvider source, String sql, Task task) throws SQLException {
+		if (source instanceof ConnectionPool pool) {
+			try (var lease = pool.borrow()) {
+				return task.run(lease.prepare(sql));
+			}
+		}
+		var budget = settings.budget;
+		if (budget != null && !budget.reserveStatement(pools)) {
+			throw new SQLTransientException("Statement budget exhausted for " + sql);
+		}
+		try (var statement = settings.dialect.prepare(source.getConnection(), sql, false)) {
+			return task.run(statement);
+		} finally {
+			if (budget != null) {
+				budget.releaseStatement();
+			}
+		}
+	}
+
+	/**
+	 * Binds, executes and collects the record on the given statement, cancelling
+	 * the statement if the deadline is exceeded.
+	 *
+	 * @throws SQLTimeoutException if the deadline has been exceeded.
+	 */
+	private Object execute(Call call, PreparedStatement statement) throws SQLException {
+		submit(call, statement);
+		if (variant.watch != 0) {
+			statement.setLong(1, call.mark);
+		}
+		// Always set as pooled statements may be shared by variants of other shapes and
+		// deadlines, and the cache's deadline may since have been removed.
+		statement.setMaxRows(variant.shape == Shape.Kind.SINGLE || variant.shape == Shape.Kind.OPTIONAL ? 1 : 0);
+		long timeout = variant.timeout != 0L ? variant.timeout : settings.timeout;
+		if (timeout <= 0L) {
+			statement.setQueryTimeout(0);
+			return consume(call, statement);
+		}
+		// The driver's own timeout only has a resolution of seconds, and is used as a
+		// fallback if the cancellation was missed.
+		statement.setQueryTimeout((int) Math.min((timeout + 999L) / 1000L, Integer.MAX_VALUE));
+		var exceeded = new AtomicBoolean();
+		var deadline = Settings.SCHEDULER.schedule(() -> {
+			exceeded.set(true);
+			cancel(statement);
+		}, timeout, TimeUnit.MILLISECONDS);
+		try {
+			return consume(call, statement);
+		} catch (SQLException sql) {
+			if (exceeded.get()) {
+				throw new SQLTimeoutException("Deadline of " + timeout + "ms exceeded for " + statementRaw, sql);
+			}
+			throw sql;
+		} finally {
+			deadline.cancel(false);
+		}
+	}
+
+	private Object consume(Call call, PreparedStatement statement) throws SQLException {
+		long start = System.nanoTime();
+		ResultSet set;
+		try {
+			set = statement.executeQuery();
+		} finally {
+			// Also counted on failure, as the limiter backs off from timeouts by their
+			// latency.
+			call.executing += System.nanoTime() - start;
+		}
+		try (set) {
+			long executed = System.nanoTime();
+			Object result;
+			if (call.export != null) {
+				try {
+					result = call.export.write(set);
+				} catch (IOException io) {
+					// Carried past the task, which may only throw SQL exceptions.
+					throw new UncheckedIOException(io);
+				}
+			} else if (variant.watch != 0) {
+				result = watch(call, set);
+			} else if (settings.pipeline > 0 && variant.arity != 0 && variant.shape == Shape.Kind.LIST) {
+				result = pipeline(set);
+			} else {
+				result = collect(set);
+			}
+			call.mapping += System.nanoTime() - executed;
+			return result;
+		}
+	}
+
+	/**
+	 * Maps every row of the watched variant, taking the mark from the last row.
+	 */
+	private Object watch(Call call, ResultSet set) throws SQLException {
+		var rows = new ArrayList<>();
+		while (set.next()) {
+			rows.add(map(set));
+			call.mark = set.getLong(variant.watch);
+		}
+		return rows;
+	}
+
+	/**
+	 * Reads the rows in batches on the calling thread while the batches read so
+	 * far are built on the executor, combining the batches in the order read.
+	 * Buffers of built batches are reused, bounding the rows held to those of the
+	 * batches in flight.
+	 */
+	private Object pipeline(ResultSet set) throws SQLException {
+		int size = settings.pipeline, workers = Math.max(settings.pipelineWorkers, 1);
+		var executor = settings.executor;
+		var rows = new ArrayList<>();
+		var pending = new ArrayDeque<Batch>(workers);
+		var free = new ArrayDeque<Batch>(workers);
+		for (boolean more = true; more;) {
+			var batch = free.isEmpty() ? new Batch(size, variant.arity) : free.pop();
+			while (batch.count < size && (more = set.next())) {
+				read(set, batch.values[batch.count++]);
+			}
+			if (batch.count == 0) {
+				break;
+			}
+			batch.building = CompletableFuture.runAsync(batch, executor);
+			pending.addLast(batch);
+			if (pending.size() >= workers) {
+				free.push(pending.pollFirst().drain(rows));
+			}
+		}
+		for (Batch batch; (batch = pending.pollFirst()) != null;) {
+			batch.drain(rows);
+		}
+		return rows;
+	}
+
+	/**
+	 * Executes the record on the handler's statement, sending a hedged request to
+	 * the replica if the configured percentile of recent latency has passed.
+	 * Whichever request answers first is used, with the other being cancelled.
+	 */
+	private Object hedged(Call call) throws SQLException {
+		var primary = call.attempt();
+		var hedge = new Hedge(call.attempt());
+		var timer = Settings.SCHEDULER.schedule(() -> settings.executor.execute(hedge),
+				latency.percentile(settings.hedge), TimeUnit.NANOSECONDS);
+		long start = System.nanoTime();
+		Object result;
+		try {
+			result = run(primary, statement -> execute(primary, hedge.primary = statement));
+		} catch (SQLException | RuntimeException e) {
+			// The hedge cancels the primary when it wins.
+			if (hedge.winner.isDone()) {
+				return hedge.result(call);
+			}
+			timer.cancel(false);
+			hedge.cancel();
+			throw e;
+		}
+		if (hedge.winner.complete(result)) {
+			latency.record(System.nanoTime() - start);
+			timer.cancel(false);
+			hedge.cancel();
+			call.took(primary);
+			return result;
+		}
+		return hedge.result(call);
+	}
+
+	/**
+	 * @return The bounds of the variant, expanded alike the call's statement.
+	 */
+	private String bounds(Call call) {
+		var sql = call.sql;
+		if (sql == variant.sql) {
+			return variant.bounds;
+		}
+		// Expansions only ever occur after the tables, within the filters.
+		int select = variant.bounds.length() - (variant.sql.length() - variant.from - variant.tail);
+		return variant.bounds.substring(0, select) + sql.substring(variant.from, sql.length() - variant.tail);
+	}
+
+	/** Binds the call onto the statement, replaying its parameters if captured. */
+	private void submit(Call call, PreparedStatement statement) throws SQLException {
+		if (call.parameters != null) {
+			call.parameters.replay(variant, statement);
+		} else {
+			bind(call.record, statement);
+		}
+	}
+
+	private Object range(Call call, PreparedStatement statement, long from, long to) throws SQLException {
+		statement.setLong(1, from);
+		statement.setLong(2, to);
+		return execute(call, statement);
+	}
+
+	/**
+	 * Runs the record across the split partitions, combining the results in range
+	 * order. The first partition is ran on the calling thread using the handler's
+	 * statement.
+	 */
+	private Object split(Call call) throws SQLException {
+		var bounds = (long[]) run(provider, bounds(call), statement -> {
+			// Filtered alike the partitions, spanning the whole range.
+			statement.setLong(1, Long.MIN_VALUE);
+			statement.setLong(2, Long.MAX_VALUE);
+			submit(call, statement);
+			long start = System.nanoTime();
+			try (var set = statement.executeQuery()) {
+				long min;
+				if (!set.next() || (min = set.getLong(1)) == 0L && set.wasNull()) {
+					return null;
+				}
+				return new long[] { min, set.getLong(2) };
+			} finally {
+				call.executing += System.nanoTime() - start;
+			}
+		});
+		if (bounds == null) {
+			// Nothing matches, nothing to split.
+			return run(call, statement -> range(call, statement, 1L, 0L));
+		}
+		long min = bounds[0], max = bounds[1];
+		// Treated as unsigned to avoid overflowing on large ranges.
+		long span = max - min, step;
+		int partitions = variant.partitions;
+		if (Long.compareUnsigned(span, partitions) < 0) {
+			partitions = (int) span + 1;
+			step = 1L;
+		} else {
+			step = Long.divideUnsigned(span, partitions);
+		}
+
+		call.partitions = partitions;
+		var futures = new CompletableFuture<?>[partitions - 1];
+		for (int p = 1; p < partitions; p++) {
+			long from = min + step * p, to = p == partitions - 1 ? max : from + step - 1;
+			futures[p - 1] = CompletableFuture.supplyAsync(() -> blocking(call, from, to), settings.executor);
+		}
+
+		var results = new Object[partitions];
+		try {
+			long to = partitions == 1 ? max : min + step - 1;
+			results[0] = run(call, statement -> range(call, statement, min, to));
+		} catch (SQLException | RuntimeException e) {
+			for (var future : futures) {
+				future.cancel(false);
+			}
+			throw e;
+		}
+		try {
+			for (int p = 1; p < partitions; p++) {
+				results[p] = futures[p - 1].join();
+			}
+		} catch (CompletionException ce) {
+			if (ce.getCause() instanceof SQLException sql) {
+				throw sql;
+			}
+			throw ce;
+		}
+		return combine(results);
+	}
+
+	/**
+	 * Combines the results of each partition as given in range order.
+	 */
+	@SuppressWarnings("unchecked")
+	private Object combine(Object[] results) {
+		switch (variant.shape) {
+			case COUNT -> {
+				long count = 0L;
+				for (var result : results) {
+					count += (Long) result;
+				}
+				return count;
+			}
+			case EXISTS -> {
+				for (var result : results) {
+					if ((Boolean) result) {
+						return Boolean.TRUE;
+					}
+				}
+				return Boolean.FALSE;
+			}
+			default -> {
+				int size = 0;
+				for (var result : results) {
+					size += ((ArrayList<Object>) result).size();
+				}
+				var combined = new ArrayList<>(size);
+				for (int p = 0; p < results.length; p++) {
+					combined.addAll((ArrayList<Object>) results[variant.reverse ? results.length - 1 - p : p]);
+				}
+				return combined;
+			}
+		}
+	}
+
+	/**
+	 * Runs a single partition on a fresh statement, compensating the pool if ran
+	 * within a {@link ForkJoinPool}.
+	 */
+	private Object blocking(Call call, long from, long to) {
+		var blocker = new ForkJoinPool.ManagedBlocker() {
+			Object result;
+
+			@Override
+			public boolean block() {
+				try {
+					result = run(provider, call.sql, statement -> range(call, statement, from, to));
+				} catch (SQLException sql) {
+					throw new CompletionException(sql);
+				}
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				return result != null;
+			}
+		};
+		try {
+			ForkJoinPool.managedBlock(blocker);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new CompletionException(ie);
+		}
+		return blocker.result;
+	}
+
+	private static void cancel(Statement statement) {
+		try {
+			statement.cancel();
+		} catch (SQLException sql) {
+			// The statement has likely already finished or been closed.
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void complete(Object record, Object result) {
+		((DatabaseRecord<Object>) record).complete(result);
+	}
+
+	/**
+	 * Prepares the handler's own statement, being the first of its pool.
+	 *
+	 * @return The statement, or null if the provider is a {@link ConnectionPool},
+	 *         where statements are instead prepared per connection as borrowed.
+	 */
 	public final Statement prepareStatement() throws DatabaseException {
+		if (provider instanceof ConnectionPool) {
+			return null;
+		}
 		try {
 			closeStatement();
-			return statement = provider.getConnection().prepareStatement(statementRaw);
+			var statement = settings.dialect.prepare(provider.getConnection(), statementRaw, false);
+			if (!pools.add(statementRaw, statement)) {
+				// Closed while preparing; the handler is no longer used.
+				statement.close();
+				return null;
+			}
+			return this.statement = statement;
 		} catch (SQLException sql) {
 			throw new DatabaseException(sql, statement, statementRaw);
 		}
 	}
 
+	/** @return The amount of statements pooled, whether idle or in use. */
+	public final int statements() {
+		return pools.size();
+	}
+
+	/**
+	 * @return The pools of the handler, to be closed by the cache once the
+	 *         handler is no longer used.
+	 */
+	public final StatementPools pools() {
+		return pools;
+	}
+
+	/**
+	 * Closes every pooled statement. Statements currently in use are closed once
+	 * their query completes.
+	 */
 	public final void closeStatement() throws DatabaseException {
-		if (statement != null) {
+		pools.clear();
+		statement = null;
+	}
+
+	/**
+	 * Binds the collection as a single array parameter, for dialects that can
+	 * match against arrays with <code>= any(?)</code>. While capturing, the
+	 * collection is kept as is, as there is no connection to create the array
+	 * with.
+	 */
+	protected static void array(PreparedStatement statement, int index, Object value) throws SQLException {
+		var parameters = Parameters.capturing(statement);
+		if (parameters != null) {
+			parameters.array(index, value);
+			return;
+		}
+		if (value == null) {
+			statement.setNull(index, Types.ARRAY);
+			return;
+		}
+		var elements = Parameters.elements(value);
+		var component = value.getClass().getComponentType();
+		if (component == null || component == Object.class) {
+			component = elements.length == 0 || elements[0] == null ? null : elements[0].getClass();
+		}
+		if (component == null) {
+			// Leaves the database to infer the type from the column.
+			statement.setNull(index, Types.ARRAY);
+			return;
+		}
+		statement.setArray(index, statement.getConnection().createArrayOf(arrayType(component), elements));
+	}
+
+	private static String arrayType(Class<?> component) {
+		if (component == long.class || component == Long.class) {
+			return "bigint";
+		} else if (component == int.class || component == Integer.class) {
+			return "integer";
+		} else if (component == short.class || component == Short.class) {
+			return "smallint";
+		} else if (component == double.class || component == Double.class) {
+			return "float8";
+		} else if (component == float.class || component == Float.class) {
+			return "float4";
+		} else if (component == boolean.class || component == Boolean.class) {
+			return "boolean";
+		} else if (component == Timestamp.class) {
+			return "timestamp";
+		} else if (component == UUID.class) {
+			return "uuid";
+		}
+		return "varchar";
+	}
+
+	/** A single query of the handler, along with its captured parameters if any. */
+	private static final class Call {
+		final Object record;
+		final Parameters parameters;
+		final String sql;
+		/** Nanoseconds spent, summed without synchronisation across partitions. */
+		long executing, mapping;
+		/** Amount of partitions the call was split into. */
+		int partitions = 1;
+		/** High-water mark of the watched column, bound at 1 when watched. */
+		long mark = Long.MIN_VALUE;
+		/** Writes the rows in place of collecting them when exporting. */
+		Exporter export;
+
+		Call(Object record, Parameters parameters, String sql) {
+			this.record = record;
+			this.parameters = parameters;
+			this.sql = sql;
+		}
+
+		/** @return A copy for a single hedged attempt, timed on its own. */
+		Call attempt() {
+			var attempt = new Call(record, parameters, sql);
+			attempt.mark = mark;
+			attempt.export = export;
+			return attempt;
+		}
+
+		/** Takes the time spent by the attempt that answered. */
+		void took(Call attempt) {
+			executing = attempt.executing;
+			mapping = attempt.mapping;
+		}
+	}
+
+	/** Rows read by the pipeline, to be built on the executor. */
+	private final class Batch implements Runnable {
+		final Object[][] values;
+		final Object[] built;
+		CompletableFuture<Void> building;
+		int count;
+
+		Batch(int size, int arity) {
+			values = new Object[size][arity];
+			built = new Object[size];
+		}
+
+		@Override
+		public void run() {
+			for (int r = 0; r < count; r++) {
+				built[r] = build(values[r]);
+			}
+		}
+
+		/**
+		 * Waits for the batch to be built, adding the rows and resetting the batch for
+		 * reuse.
+		 */
+		Batch drain(ArrayList<Object> rows) {
 			try {
-				statement.close();
-			} catch (SQLException sql) {
-				throw new DatabaseException(sql, statement);
+				building.join();
+			} catch (CompletionException ce) {
+				if (ce.getCause() instanceof RuntimeException re) {
+					throw re;
+				}
+				throw ce;
+			}
+			for (int r = 0; r < count; r++) {
+				rows.add(built[r]);
+				built[r] = null;
+			}
+			count = 0;
+			return this;
+		}
+	}
+
+	/** Work ran against a prepared statement. */
+	@FunctionalInterface
+	private interface Task {
+		Object run(PreparedStatement statement) throws SQLException;
+	}
+
+	/**
+	 * Hedged request, ran on a fresh statement obtained from the replica, or from
+	 * a second connection of the pool. Failures are ignored as the primary
+	 * request is still running.
+	 */
+	private final class Hedge implements Runnable {
+		final CompletableFuture<Object> winner = new CompletableFuture<>();
+		final Call call;
+		volatile PreparedStatement primary, statement;
+
+		Hedge(Call call) {
+			this.call = call;
+		}
+
+		@Override
+		public void run() {
+			var replica = settings.replica;
+			long start = System.nanoTime();
+			try {
+				StatementHandler.this.run(replica == null ? provider : replica, call.sql, statement -> {
+					this.statement = statement;
+					if (!winner.isDone() && winner.complete(execute(call, statement))) {
+						latency.record(System.nanoTime() - start);
+						var primary = this.primary;
+						if (primary != null) {
+							StatementHandler.cancel(primary);
+						}
+					}
+					return null;
+				});
+			} catch (SQLException | RuntimeException e) {
+				// Ignored; the primary will either answer or fail on its own.
 			} finally {
 				statement = null;
 			}
 		}
+
+		void cancel() {
+			var statement = this.statement;
+			if (statement != null) {
+				StatementHandler.cancel(statement);
+			}
+		}
+
+		/** @return The result of the hedge once it has won, taking its time. */
+		Object result(Call original) {
+			var result = winner.join();
+			original.took(call);
+			return result;
+		}
+	}
+
+	/** @return The plan captured on first use, or null if not yet explained. */
+	public final Plan plan() {
+		return variant.plan;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getName() + '{' + variant + '}';
 	}
 }
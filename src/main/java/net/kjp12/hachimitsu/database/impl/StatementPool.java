@@ -0,0 +1,182 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.impl;// Created 2026-19-10T17:21:06
+
+import net.kjp12.hachimitsu.database.api.SqlConnectionProvider;
+import net.kjp12.hachimitsu.database.api.StatementBudget;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free pool of statements of a single SQL string, allowing a handler to
+ * run concurrently without sharing bound parameters.
+ * <p>
+ * Idle statements are kept as a stack, as such, the most recently used are
+ * reused first while the coldest sink to the bottom, where they are closed once
+ * idle for longer than {@link Settings#statementIdle}, either as statements
+ * are released or by a trim scheduled while surplus statements are idle. Grows
+ * on demand up to {@link Settings#statements}, past which {@link #borrow()}
+ * gives nothing, as it also does once the {@link Settings#budget budget} is
+ * exhausted.
+ *
+ * @author KJP12
+ * @since ${version}
+ **/
+final class StatementPool {
+	private final ConcurrentLinkedDeque<Idle> idle = new ConcurrentLinkedDeque<>();
+	/** Amount of statements owned by the pool, whether idle or borrowed. */
+	private final AtomicInteger size = new AtomicInteger();
+	private final SqlConnectionProvider provider;
+	private final Settings settings;
+	/** Pools of the handler, identifying it to the budget. */
+	private final StatementPools owner;
+	/** Budget the statements are counted against, kept for releasing them. */
+	private final StatementBudget budget;
+	private final String sql;
+	private volatile boolean closed;
+	/** Whether a trim is scheduled, as to only ever have one. */
+	private final AtomicBoolean trimming = new AtomicBoolean();
+
+	StatementPool(SqlConnectionProvider provider, Settings settings, StatementPools owner, String sql) {
+		this.provider = provider;
+		this.settings = settings;
+		this.owner = owner;
+		this.budget = settings.budget;
+		this.sql = sql;
+	}
+
+	/**
+	 * Borrows an idle statement, preparing a new one if none are idle.
+	 *
+	 * @return The statement to {@link #release(PreparedStatement) release} once
+	 *         done, or null if closed or if the pool or budget is at its limit.
+	 */
+	PreparedStatement borrow() throws SQLException {
+		if (closed) {
+			return null;
+		}
+		var entry = idle.pollFirst();
+		if (entry != null) {
+			return entry.statement;
+		}
+		for (int n, max = Math.max(settings.statements, 1); (n = size.get()) < max;) {
+			if (size.compareAndSet(n, n + 1)) {
+				if (budget != null && !budget.reserveStatement(owner)) {
+					size.decrementAndGet();
+					return null;
+				}
+				try {
+					return settings.dialect.prepare(provider.getConnection(), sql, false);
+				} catch (SQLException | RuntimeException e) {
+					discard(null);
+					throw e;
+				}
+			}
+		}
+		return null;
+	}
+
+	/** Adds an already prepared statement as idle. */
+	void add(PreparedStatement statement) {
+		if (budget != null) {
+			budget.forceStatement(owner);
+		}
+		size.incrementAndGet();
+		idle.offerFirst(new Idle(statement, System.nanoTime()));
+	}
+
+	/**
+	 * Returns the statement to the pool, {@link #trim(long) trimming} the pool.
+	 */
+	void release(PreparedStatement statement) {
+		if (closed) {
+			discard(statement);
+			return;
+		}
+		long now = System.nanoTime();
+		idle.offerFirst(new Idle(statement, now));
+		trim(now);
+		schedule();
+	}
+
+	/**
+	 * Closes the coldest statements that have been idle for too long, always
+	 * keeping at least one.
+	 */
+	private void trim(long now) {
+		long timeout = settings.statementIdle * 1_000_000L;
+		for (Idle last; size.get() > 1 && (last = idle.peekLast()) != null && now - last.since > timeout;) {
+			if (idle.removeLastOccurrence(last)) {
+				discard(last.statement);
+			}
+		}
+	}
+
+	/**
+	 * Schedules a trim while surplus statements are idle, as the pool may not see
+	 * another release for a while.
+	 */
+	private void schedule() {
+		if (!closed && size.get() > 1 && !idle.isEmpty() && trimming.compareAndSet(false, true)) {
+			Settings.SCHEDULER.schedule(() -> {
+				trimming.set(false);
+				if (!closed) {
+					trim(System.nanoTime());
+					schedule();
+				}
+			}, settings.statementIdle, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/** @return The amount of statements owned by the pool. */
+	int size() {
+		return size.get();
+	}
+
+	/**
+	 * Closes every idle statement. Borrowed statements are closed as they are
+	 * released.
+	 */
+	void close() {
+		closed = true;
+		for (Idle entry; (entry = idle.pollFirst()) != null;) {
+			discard(entry.statement);
+		}
+	}
+
+	/** Closes the statement if any, no longer counting it. */
+	private void discard(PreparedStatement statement) {
+		size.decrementAndGet();
+		if (budget != null) {
+			budget.releaseStatement();
+		}
+		if (statement == null) {
+			return;
+		}
+		try {
+			statement.close();
+		} catch (SQLException sql) {
+			// Dropped either way.
+		}
+	}
+
+	private record Idle(PreparedStatement statement, long since) {
+	}
+}
@@ -0,0 +1,100 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+
+package net.kjp12.hachimitsu.database.impl;// Created 2026-19-10T23:05:41
+
+import net.kjp12.hachimitsu.database.api.SqlConnectionProvider;
+
+import java.sql.PreparedStatement;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Statement pools of a single handler, keyed by SQL. Held apart from the
+ * handler, allowing its cache to close the statements once the handler has
+ * been collected.
+ * <p>
+ * Pools are only created and closed under the lock, as such, no pool can be
+ * created past {@link #close()}. Handlers still being used past then run on
+ * statements prepared for that call alone.
+ *
+ * @author KJP12
+ * @since ${version}
+ * @see StatementPool
+ **/
+public final class StatementPools {
+	private final ConcurrentHashMap<String, StatementPool> pools = new ConcurrentHashMap<>();
+	private final SqlConnectionProvider provider;
+	private final Settings settings;
+	/** Guarded by this. */
+	private boolean closed;
+
+	StatementPools(SqlConnectionProvider provider, Settings settings) {
+		this.provider = provider;
+		this.settings = settings;
+	}
+
+	/**
+	 * @return The pool of the SQL, created if absent, or null once closed.
+	 */
+	StatementPool get(String sql) {
+		var pool = pools.get(sql);
+		if (pool != null) {
+			return pool;
+		}
+		synchronized (this) {
+			return closed ? null : pools.computeIfAbsent(sql, s -> new StatementPool(provider, settings, this, s));
+		}
+	}
+
+	/**
+	 * Adds the already prepared statement as idle to the pool of the SQL.
+	 *
+	 * @return Whether the statement was added, otherwise, it is to be closed.
+	 */
+	boolean add(String sql, PreparedStatement statement) {
+		var pool = get(sql);
+		if (pool == null) {
+			return false;
+		}
+		pool.add(statement);
+		return true;
+	}
+
+	/** @return The amount of statements pooled, whether idle or in use. */
+	public int size() {
+		int statements = 0;
+		for (var pool : pools.values()) {
+			statements += pool.size();
+		}
+		return statements;
+	}
+
+	/**
+	 * Closes every pool, allowing new pools to be created as used. Statements in
+	 * use are closed once released.
+	 */
+	public synchronized void clear() {
+		for (var pool : pools.values()) {
+			pool.close();
+		}
+		pools.clear();
+	}
+
+	/** Closes every pool for good, never creating another. */
+	public synchronized void close() {
+		closed = true;
+		clear();
+	}
+}
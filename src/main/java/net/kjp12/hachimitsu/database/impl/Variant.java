@@ -0,0 +1,108 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package net.kjp12.hachimitsu.database.impl;// Created 2026-19-10T09:20:11
+
+import net.kjp12.hachimitsu.database.api.Plan;
+import net.kjp12.hachimitsu.database.api.StatementCache;
+import net.kjp12.hachimitsu.database.api.annotation.Shape;
+
+import java.util.Arrays;
+
+/**
+ * Describes a single flags variant of a generated handler.
+ * <p>
+ * Populated by the {@link StatementCache} while generating the handler, and is
+ * to be treated as read-only once the handler has been constructed.
+ *
+ * @author KJP12
+ * @since ${version}
+ * @see StatementHandler
+ **/
+public final class Variant {
+	public final int flags;
+	public String sql;
+	public Shape.Kind shape = Shape.Kind.LIST;
+
+	/**
+	 * Statement selecting the <code>min</code> and <code>max</code> of the split
+	 * column, filtered alike the variant, including the range at 1 and 2. Null
+	 * when the variant isn't split.
+	 */
+	public String bounds;
+	/**
+	 * Offsets of the filtered tables within the SQL, from its start and from its
+	 * end, for deriving the bounds of expanded statements.
+	 */
+	public int from, tail;
+	public int partitions = 1;
+	/** Whether the partitions should be combined in descending order. */
+	public boolean reverse;
+
+	/**
+	 * Column of the watched value within the result, the high-water mark being
+	 * bound at 1. 0 when the variant isn't watched.
+	 */
+	public int watch;
+
+	/**
+	 * Amount of values read per row for pipelined mapping, 0 when the shape maps
+	 * no columns.
+	 */
+	public int arity;
+	/** Mappers of the selected columns in order, for exporting. */
+	public ClassMap[] columns;
+
+	/**
+	 * Memos of the provider calls marked with <code>#</code>, indexed by site.
+	 * Null when nothing is memoized.
+	 *
+	 * @see C0
+	 */
+	public Memo[] memos;
+
+	/** Deadline in milliseconds, 0 to use the cache's. */
+	public long timeout;
+
+	/**
+	 * Ascending parameter indices of collections to be expanded into a bucket of
+	 * placeholders, along with the offsets of their placeholder within the SQL.
+	 * Null when the variant has no such collections.
+	 *
+	 * @see Parameters
+	 */
+	public int[] expansions, markers;
+	/**
+	 * Whether collections past the largest bucket may be bound in chunks, each
+	 * executing the statement with the rows being concatenated. Only set for lists
+	 * matching collections with <code>in</code>, and without any pagination,
+	 * aggregation, split or watch, as otherwise the rows would differ.
+	 */
+	public boolean chunked;
+
+	/** Plan of the statement, captured on first use when explaining. */
+	public volatile Plan plan;
+
+	public Variant(int flags) {
+		this.flags = flags;
+	}
+
+	@Override
+	public String toString() {
+		return "Variant{" + "flags=" + flags + ", sql='" + sql + '\'' + ", shape=" + shape + ", bounds='" + bounds
+				+ '\'' + ", partitions=" + partitions + ", reverse=" + reverse + ", watch=" + watch
+				+ ", timeout=" + timeout
+				+ ", expansions=" + Arrays.toString(expansions) + ", chunked=" + chunked + '}';
+	}
+}
@@ -0,0 +1,160 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T11:31:52
+
+import net.kjp12.hachimitsu.database.api.annotation.Query;
+import net.kjp12.hachimitsu.database.api.annotation.Table;
+import net.kjp12.hachimitsu.database.api.annotation.Value;
+import net.kjp12.hachimitsu.database.api.annotation.Watch;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * Collections bound as arrays must be capturable without a connection, as the
+ * capturing statement has none.
+ *
+ * @author KJP12
+ * @since ${version}
+ **/
+class ArrayCaptureTest {
+	@Test
+	void slowLogCapturesArrays() throws DatabaseException, SQLException {
+		var database = new FakeDatabase("H2");
+		var cache = new StatementCache<>(database, Ids.class, method("of"));
+		var log = new SlowQueryLog(1, Duration.ZERO, 0D, false);
+		cache.setSlowQueryLog(log);
+
+		var record = new Ids(List.of(1L, 2L));
+		cache.handle(record);
+
+		assertEquals(List.of(), record.result);
+		assertEquals(List.of(List.of(1L, 2L), 1), log.entries().get(0).parameters());
+		var executed = database.executed.get(0);
+		assertEquals("select id from rows where id = any(?) and tenant = ?", executed.getKey());
+		var array = assertInstanceOf(java.sql.Array.class, executed.getValue().get(1));
+		assertArrayEquals(new Object[] { 1L, 2L }, (Object[]) array.getArray());
+	}
+
+	@Test
+	void singleFlightBindsOnce() throws DatabaseException {
+		var database = new FakeDatabase("H2");
+		var cache = new StatementCache<>(database, Ids.class, method("of"));
+		cache.setSingleFlight(UnaryOperator.identity());
+
+		var record = new Ids(List.of(1L, 2L));
+		cache.handle(record);
+
+		assertEquals(List.of(), record.result);
+		assertEquals(1, database.tenants.get());
+		var executed = database.executed.get(0);
+		assertEquals("select id from rows where id = any(?) and tenant = ?", executed.getKey());
+		assertInstanceOf(java.sql.Array.class, executed.getValue().get(1));
+		assertEquals(1, executed.getValue().get(2));
+	}
+
+	@Test
+	void explainCapturesArrays() throws Exception {
+		var database = new FakeDatabase("PostgreSQL");
+		var cache = new StatementCache<>(database, Ids.class, method("of"));
+		var plan = new CompletableFuture<Plan>();
+		cache.setExplain(0L, plan::complete);
+
+		var record = new Ids(List.of(1L, 2L));
+		cache.handle(record);
+
+		assertEquals(List.of(), record.result);
+		var sql = "select id from rows where id = any(?) and tenant = ?";
+		assertEquals(sql, plan.get(10L, TimeUnit.SECONDS).sql());
+		var explained = database.executed.stream().filter(e -> e.getKey().equals("explain " + sql)).findFirst()
+				.orElseThrow();
+		assertInstanceOf(java.sql.Array.class, explained.getValue().get(1));
+	}
+
+	@Test
+	void watchCapturesArrays() throws Exception {
+		var database = new FakeDatabase("H2");
+		var cache = new StatementCache<>(database, Ids.class, method("watched"));
+		var failure = new CompletableFuture<Exception>();
+
+		try (var watcher = cache.watch(new Ids(List.of(1L, 2L)), Duration.ofMillis(10L), 0D, failure::complete)) {
+			for (long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L); database.executed.isEmpty()
+					&& System.nanoTime() < deadline;) {
+				Thread.sleep(10L);
+			}
+		}
+
+		assertFalse(failure.isDone());
+		var executed = database.executed.get(0);
+		assertEquals("select id,id from rows where id>? and id = any(?) and tenant = ? order by id", executed.getKey());
+		assertEquals(Long.MIN_VALUE, executed.getValue().get(1));
+		assertInstanceOf(java.sql.Array.class, executed.getValue().get(2));
+	}
+
+	static Method method(String name) {
+		for (var method : ArrayCaptureTest.class.getMethods()) {
+			if (method.getName().equals(name)) {
+				return method;
+			}
+		}
+		throw new AssertionError(name);
+	}
+
+	@Table("rows")
+	@Query(query = "id in (?)", values = "ids", mask = 1)
+	@Query(query = "tenant = ?", values = "^.tenant()", mask = 1)
+	public static Long of(@Value("id") long id) {
+		return id;
+	}
+
+	@Table("rows")
+	@Query(query = "id in (?)", values = "ids", mask = 1)
+	@Query(query = "tenant = ?", values = "^.tenant()", mask = 1)
+	@Watch(@Value("id"))
+	public static Long watched(@Value("id") long id) {
+		return id;
+	}
+
+	public static final class Ids implements DatabaseRecord<Object> {
+		public final List<Long> ids;
+		public Object result;
+
+		Ids(List<Long> ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public int flags() {
+			return 1;
+		}
+
+		@Override
+		public void complete(Object result) {
+			this.result = result;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/* Copyright 2026 KJP12
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+
+package net.kjp12.hachimitsu.database.api;// Created 2026-19-10T11:24:16
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection provider of a database without any rows, recording the SQL and
+ * parameters of every statement executed.
+ *
+ * @author KJP12
+ * @since ${version}
+ **/
+public final class FakeDatabase implements SqlConnectionProvider {
+	private static final ClassLoader LOADER = FakeDatabase.class.getClassLoader();
+
+	/** Every statement executed, along with its parameters by index. */
+	public final List<Map.Entry<String, Map<Integer, Object>>> executed = Collections
+			.synchronizedList(new ArrayList<>());
+	/** Amount of times {@link #tenant()} has been bound. */
+	public final AtomicInteger tenants = new AtomicInteger();
+	private final String product;
+	private final Connection connection;
+
+	/** @param product The database product name to report. */
+	public FakeDatabase(String product) {
+		this.product = product;
+		this.connection = proxy(Connection.class, (method, args) -> switch (method) {
+			case "getMetaData" -> proxy(DatabaseMetaData.class,
+					(m, a) -> m.equals("getDatabaseProductName") ? this.product : null);
+			case "prepareStatement" -> statement((String) args[0]);
+			case "createArrayOf" -> array((Object[]) args[1]);
+			case "isValid" -> true;
+			default -> null;
+		});
+	}
+
+	@Override
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/** @return The tenant to bind, for counting how often a record is bound. */
+	public int tenant() {
+		tenants.incrementAndGet();
+		return 1;
+	}
+
+	private PreparedStatement statement(String sql) {
+		var parameters = new TreeMap<Integer, Object>();
+		return proxy(PreparedStatement.class, (method, args) -> {
+			if (method.startsWith("set") && args.length >= 2 && args[0] instanceof Integer index) {
+				parameters.put(index, args[1]);
+				return null;
+			}
+			return switch (method) {
+				case "executeQuery" -> {
+					executed.add(Map.entry(sql, new TreeMap<>(parameters)));
+					yield proxy(ResultSet.class,
+							(m, a) -> m.equals("getMetaData") ? proxy(ResultSetMetaData.class, (n, b) -> null) : null);
+				}
+				case "getConnection" -> connection;
+				case "clearParameters" -> {
+					parameters.clear();
+					yield null;
+				}
+				default -> null;
+			};
+		});
+	}
+
+	private static java.sql.Array array(Object[] elements) {
+		return proxy(java.sql.Array.class, (method, args) -> method.equals("getArray") ? elements : null);
+	}
+
+	private interface Handler {
+		Object invoke(String method, Object[] args) throws Exception;
+	}
+
+	/**
+	 * Implements the interface with the handler, defaulting primitive returns to
+	 * zero as to not fail on any call the handler ignores.
+	 */
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		return type.cast(Proxy.newProxyInstance(LOADER, new Class<?>[] { type }, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return type.getSimpleName() + '@' + Integer.toHexString(System.identityHashCode(proxy));
+			}
+			var result = handler.invoke(method.getName(), args == null ? new Object[0] : args);
+			var returns = method.getReturnType();
+			if (result == null && returns.isPrimitive() && returns != void.class) {
+				return returns == boolean.class ? false : Array.get(Array.newInstance(returns, 1), 0);
+			}
+			return result;
+		}));
+	}
+}